@@ -0,0 +1,93 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+/**
+ * Reading the whole test export into WikipediaPages: through the DOM, the way
+ * the project first did it, through the streaming WikiPageReader, and through
+ * the memory mapped parallel reader.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+
+    @Param({ "2", "4" })
+    public int threads;
+
+    @Benchmark
+    public void domImport(Blackhole hole) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().parse(PageFixtures.INPUT);
+        NodeList nl = doc.getElementsByTagName("page");
+        for (int i = 0; i < nl.getLength(); i++) {
+            hole.consume(new WikipediaPage(nl.item(i)));
+        }
+    }
+
+    @Benchmark
+    public void streamingImport(Blackhole hole) throws Exception {
+        try (WikiPageReader reader = new WikiPageReader(PageFixtures.INPUT)) {
+            while (reader.hasNext()) hole.consume(reader.next());
+        }
+    }
+
+    @Benchmark
+    public void categoriesOnlyImport(Blackhole hole) throws Exception {
+        try (WikiPageReader reader = new WikiPageReader(PageFixtures.INPUT)) {
+            reader.setProjection(EnumSet.of(WikipediaPage.Field.CATEGORIES));
+            while (reader.hasNext()) hole.consume(reader.next().getCategories());
+        }
+    }
+
+    @Benchmark
+    public void mappedImport(Blackhole hole) throws Exception {
+        try (WikiPageReader reader = new MappedWikiPageReader(
+                PageFixtures.INPUT, threads)) {
+            while (reader.hasNext()) hole.consume(reader.next());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Real pages for the benchmarks, read from the test export.
+ *
+ * The pages of xmlInput/WikiParseTestFile.xml (or the file named by the
+ * bench.input system property) are sorted by the length of their wikitext,
+ * and the shortest, the median and the longest are the small, median and
+ * large fixtures.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public final class PageFixtures {
+
+    /** the export the fixtures are read from */
+    public static final String INPUT = System.getProperty("bench.input",
+            "xmlInput/WikiParseTestFile.xml");
+
+    private PageFixtures() { }
+
+    /**
+     * @return every page of the input, as read
+     * @throws IOException if the input can not be read
+     */
+    public static List<WikiPageSource> loadAll() throws IOException {
+        List<WikiPageSource> pages = new ArrayList<>();
+        try (WikiPageReader reader = new WikiPageReader(INPUT)) {
+            while (reader.hasNext()) pages.add(reader.nextSource());
+        }
+        if (pages.isEmpty()) throw new IOException("no pages in " + INPUT);
+        return pages;
+    }
+
+    /**
+     * @param size "small", "median" or "large"
+     * @return the page of that size
+     * @throws IOException if the input can not be read
+     */
+    public static WikiPageSource load(String size) throws IOException {
+        List<WikiPageSource> pages = loadAll();
+        pages.sort(Comparator.comparingInt(p -> p.getText().length()));
+        switch (size) {
+            case "small": return pages.get(0);
+            case "median": return pages.get(pages.size() / 2);
+            case "large": return pages.get(pages.size() - 1);
+            default: throw new IllegalArgumentException("unknown size " + size);
+        }
+    }
+}
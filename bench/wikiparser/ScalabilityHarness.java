@@ -0,0 +1,287 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs the pipeline end to end over synthetic exports of growing size, with
+ * each thread count, and reports how it scales.
+ *
+ * For every size a SyntheticDumpGenerator export is written, and for every
+ * thread count WikiParser is run on it in a JVM of its own, then xmlParser on
+ * the text document WikiParser wrote, if a tagger model is given. Each run is
+ * wrapped by the Probe, which reports the run's time, the peak resident set
+ * of the JVM (VmHWM, Linux only) and the time spent in garbage collection.
+ * The results go to scalability-report.md in the work folder as a table of
+ * pages/sec, MB/sec, peak RSS and GC time.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class ScalabilityHarness {
+
+    private static final String PROBE_PREFIX = "PROBE ";
+
+    private final Path work;
+    private final String model;         // the tagger model, or null
+    private final List<String> jvmArgs;
+    private final List<String[]> rows = new ArrayList<>();
+
+    /**
+     * @param work the folder to generate and run in
+     * @param model the tagger model file, or null to only run WikiParser
+     * @param jvmArgs the options of the JVMs the runs get, ie. -Xmx
+     */
+    public ScalabilityHarness(String work, String model, List<String> jvmArgs) {
+        this.work = Paths.get(work).toAbsolutePath();
+        this.model = model == null ? null : Paths.get(model).toAbsolutePath().toString();
+        this.jvmArgs = jvmArgs;
+    }
+
+    /**
+     * Generates an export of the size, and runs every stage on it with each
+     * thread count.
+     *
+     * @param generator makes the export
+     * @param pages the number of pages
+     * @param threadCounts the thread counts to run with
+     * @throws IOException if a run can not be started or its output read
+     * @throws InterruptedException if interrupted waiting on a run
+     */
+    public void run(SyntheticDumpGenerator generator, int pages, int[] threadCounts)
+            throws IOException, InterruptedException {
+
+        Path dir = work.resolve("pages-" + pages);
+        String input = dir.resolve("xmlInput/synthetic.xml").toString();
+        long bytes = generator.write(input, pages);
+        System.out.println("Generated " + pages + " pages, " + (bytes >> 20) + "MB");
+
+        for (int threads : threadCounts) {
+            clean(dir.resolve("xmlOutput"));
+            Files.createDirectories(dir.resolve("xmlOutput"));
+            record("WikiParser", pages, bytes, threads, probe(dir,
+                    "WikiParser-" + threads, "wikiparser.WikiParser", input,
+                    "--threads", String.valueOf(threads)));
+
+            if (model == null) continue;
+            clean(dir.resolve("POSTaggerOutput"));
+            clean(dir.resolve("CumulativeReports"));
+            Files.createDirectories(dir.resolve("POSTaggerOutput"));
+            Path link = dir.resolve(Paths.get(model).getFileName());
+            if (!Files.exists(link)) Files.createSymbolicLink(link, Paths.get(model));
+            long textBytes = Files.size(dir.resolve("xmlOutput/pageTextDocument.xml"));
+            record("xmlParser", pages, textBytes, threads, probe(dir,
+                    "xmlParser-" + threads, "xmlparser.xmlParser", "--store",
+                    "--threads", String.valueOf(threads)));
+        }
+    }
+
+    /**
+     * Writes the table of every run so far.
+     *
+     * @return the report file
+     * @throws IOException if it can not be written
+     */
+    public Path writeReport() throws IOException {
+        Path report = work.resolve("scalability-report.md");
+        try (Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            out.write("| stage | pages | MB | threads | seconds | pages/sec | MB/sec"
+                    + " | peak RSS MB | GC ms | GCs |\n");
+            out.write("|---|---:|---:|---:|---:|---:|---:|---:|---:|---:|\n");
+            for (String[] row : rows) out.write("| " + String.join(" | ", row) + " |\n");
+        }
+        return report;
+    }
+
+    private void record(String stage, int pages, long bytes, int threads,
+            long[] probe) {
+        double seconds = probe[0] / 1e9;
+        double mb = bytes / (double) (1 << 20);
+        String[] row = {
+            stage, String.valueOf(pages), String.format("%.1f", mb),
+            String.valueOf(threads), String.format("%.2f", seconds),
+            String.format("%.0f", pages / seconds), String.format("%.2f", mb / seconds),
+            probe[1] < 0 ? "n/a" : String.valueOf(probe[1] >> 10),
+            String.valueOf(probe[2]), String.valueOf(probe[3]) };
+        rows.add(row);
+        System.out.println(String.join("  ", row));
+    }
+
+    /**
+     * Runs a main class through the Probe in a JVM of its own.
+     *
+     * @return the nanoseconds, peak RSS in KB, GC ms and GC count
+     */
+    private long[] probe(Path dir, String logName, String... command)
+            throws IOException, InterruptedException {
+
+        List<String> line = new ArrayList<>();
+        line.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        line.addAll(jvmArgs);
+        line.add("-cp");
+        line.add(System.getProperty("java.class.path"));
+        line.add(Probe.class.getName());
+        for (String arg : command) line.add(arg);
+
+        Path log = dir.resolve(logName + ".log");
+        Process process = new ProcessBuilder(line).directory(dir.toFile())
+                .redirectErrorStream(true).start();
+
+        long[] result = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                process.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.UTF_8)) {
+            String output;
+            while ((output = in.readLine()) != null) {
+                out.write(output);
+                out.newLine();
+                if (output.startsWith(PROBE_PREFIX)) {
+                    String[] fields = output.substring(PROBE_PREFIX.length()).split(" ");
+                    result = new long[fields.length];
+                    for (int i = 0; i < fields.length; i++) {
+                        result[i] = Long.parseLong(fields[i]);
+                    }
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IOException(command[0] + " failed, see " + log);
+        }
+        return result;
+    }
+
+    private static void clean(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    /**
+     * Runs a main class, then prints how long it took, the peak resident set
+     * and the GC time of the JVM, for the harness to read.
+     */
+    public static class Probe {
+
+        public static void main(String[] args) throws Exception {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+
+            long start = System.nanoTime();
+            Class.forName(args[0]).getMethod("main", String[].class)
+                    .invoke(null, (Object) rest);
+            long nanos = System.nanoTime() - start;
+
+            long gcMillis = 0, gcCount = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcMillis += Math.max(0, gc.getCollectionTime());
+                gcCount += Math.max(0, gc.getCollectionCount());
+            }
+            System.out.flush();
+            System.out.println(PROBE_PREFIX + nanos + " " + peakResidentKB()
+                    + " " + gcMillis + " " + gcCount);
+            System.exit(0);     // the tagger's pool threads are daemons, others may not be
+        }
+
+        /** VmHWM from /proc/self/status, or -1 where there is none */
+        private static long peakResidentKB() {
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                // not Linux
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * Arguments: "--sizes N,N,..." (1000,10000), "--threads N,N,..." (1,2,4),
+     * "--work DIR" (build/scalability), "--model FILE" to also run xmlParser
+     * with that tagger model, "--seed N", "--pathological X", "--jvm OPTION"
+     * (repeatable, passed to every run), and the generator's density and
+     * length settings.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        String sizes = "1000,10000", threadCounts = "1,2,4";
+        String workDir = "build/scalability", model = null;
+        String seedFN = "xmlInput/WikiParseTestFile.xml";
+        long seed = 1;
+        double pathological = 0.01, lengthScale = 1;
+        List<String> jvmArgs = new ArrayList<>();
+
+        for (int i = 0; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes": sizes = args[++i]; break;
+                case "--threads": threadCounts = args[++i]; break;
+                case "--work": workDir = args[++i]; break;
+                case "--model": model = args[++i]; break;
+                case "--seed-file": seedFN = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--pathological": pathological = Double.parseDouble(args[++i]); break;
+                case "--length-scale": lengthScale = Double.parseDouble(args[++i]); break;
+                case "--jvm": jvmArgs.add(args[++i]); break;
+                default: break;
+            }
+        }
+
+        try {
+            ScalabilityHarness harness = new ScalabilityHarness(workDir, model, jvmArgs);
+            int[] threads = Stream.of(threadCounts.split(",")).mapToInt(Integer::parseInt).toArray();
+            for (String size : sizes.split(",")) {
+                SyntheticDumpGenerator generator = new SyntheticDumpGenerator(seedFN, seed)
+                        .setPathologicalRate(pathological).setLengthScale(lengthScale);
+                harness.run(generator, Integer.parseInt(size), threads);
+            }
+            System.out.println("Report: " + harness.writeReport());
+        } catch (IOException | InterruptedException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            System.err.println("!! Scalability Run Failed !!");
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Writes a Special:Export XML file of made up pages, of any size, that look
+ * like the pages of a real export to the parser.
+ *
+ * The generator is seeded from a real export, by default the test file: its
+ * words, link targets, categories and template names are the vocabulary, and
+ * the lengths of its pages (in words) give the log-normal distribution the
+ * lengths are drawn from. The density of links, templates and citations can
+ * be set, and a share of the pages can be made pathological: deeply nested
+ * templates, unbalanced markup, huge pages, empty pages, a single enormous
+ * token, or text full of entities and characters outside the BMP.
+ *
+ * The same seed and settings always give the same file.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class SyntheticDumpGenerator {
+
+    private static final String HEADER = "<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\""
+            + " xml:lang=\"en\" version=\"0.10\">\n"
+            + "  <siteinfo>\n    <sitename>Wikipedia</sitename>\n"
+            + "    <dbname>enwiki</dbname>\n  </siteinfo>\n";
+
+    private final Random random;
+    private final String[] words, titles, linkTargets, categories, templates;
+    private final double meanLogLength, sdLogLength;
+
+    private double lengthScale = 1;         // times the seed's page lengths
+    private double linkDensity = 0.05;      // links per word
+    private double templateDensity = 0.02;  // templates per word
+    private double citationDensity = 0.1;   // citations per sentence
+    private double pathologicalRate = 0;    // share of pathological pages
+
+    /**
+     * @param seedFN the export to take the vocabulary and lengths from
+     * @param seed the seed of the random choices
+     * @throws IOException if the export can not be read
+     */
+    public SyntheticDumpGenerator(String seedFN, long seed) throws IOException {
+
+        this.random = new Random(seed);
+        Set<String> wordSet = new LinkedHashSet<>(), titleSet = new LinkedHashSet<>(),
+                linkSet = new LinkedHashSet<>(), categorySet = new LinkedHashSet<>(),
+                templateSet = new LinkedHashSet<>();
+        List<Double> logLengths = new ArrayList<>();
+
+        try (WikiPageReader reader = new WikiPageReader(seedFN)) {
+            while (reader.hasNext()) {
+                WikiPageSource source = reader.nextSource();
+                WikipediaPage page = source.parse();
+                titleSet.add(page.pageTitle);
+                categorySet.addAll(page.getCategories());
+                for (String anchor : page.getAnchors()) {
+                    if (!anchor.contains("|") && !anchor.contains(":")) linkSet.add(anchor);
+                }
+                String[] pageWords = page.getText().trim().split("\\s+");
+                logLengths.add(Math.log(Math.max(1, pageWords.length)));
+                for (String word : pageWords) {
+                    if (!word.isEmpty() && word.indexOf('<') < 0 && word.indexOf('&') < 0) {
+                        wordSet.add(word);
+                    }
+                }
+                collectTemplateNames(source.getText(), templateSet);
+            }
+        }
+        if (wordSet.isEmpty()) throw new IOException("no words in " + seedFN);
+
+        this.words = wordSet.toArray(new String[0]);
+        this.titles = titleSet.toArray(new String[0]);
+        this.linkTargets = (linkSet.isEmpty() ? titleSet : linkSet).toArray(new String[0]);
+        this.categories = (categorySet.isEmpty() ? titleSet : categorySet).toArray(new String[0]);
+        templateSet.add("Reflist");
+        this.templates = templateSet.toArray(new String[0]);
+
+        double sum = 0, squares = 0;
+        for (double length : logLengths) sum += length;
+        this.meanLogLength = sum / logLengths.size();
+        for (double length : logLengths) squares += (length - meanLogLength) * (length - meanLogLength);
+        this.sdLogLength = Math.sqrt(squares / logLengths.size());
+    }
+
+    /** the names of the templates a page opens, up to the first '|' */
+    private static void collectTemplateNames(String text, Set<String> names) {
+        for (int at = text.indexOf("{{"); at >= 0; at = text.indexOf("{{", at + 2)) {
+            int end = at + 2;
+            while (end < text.length() && end - at < 60 && "|}\n{<".indexOf(text.charAt(end)) < 0) end++;
+            String name = text.substring(at + 2, end).trim();
+            if (!name.isEmpty() && !name.toLowerCase().startsWith("cite")) names.add(name);
+        }
+    }
+
+    public SyntheticDumpGenerator setLengthScale(double scale) { this.lengthScale = scale; return this; }
+    public SyntheticDumpGenerator setLinkDensity(double density) { this.linkDensity = density; return this; }
+    public SyntheticDumpGenerator setTemplateDensity(double density) { this.templateDensity = density; return this; }
+    public SyntheticDumpGenerator setCitationDensity(double density) { this.citationDensity = density; return this; }
+    public SyntheticDumpGenerator setPathologicalRate(double rate) { this.pathologicalRate = rate; return this; }
+
+    /**
+     * @param outFN the export file to write
+     * @param pages the number of pages
+     * @return the number of bytes written
+     * @throws IOException if the file can not be written
+     */
+    public long write(String outFN, int pages) throws IOException {
+        Path out = Paths.get(outFN);
+        if (out.getParent() != null) Files.createDirectories(out.getParent());
+        try (Writer xml = new BufferedWriter(Files.newBufferedWriter(out,
+                StandardCharsets.UTF_8), 1 << 16)) {
+            xml.write(HEADER);
+            for (int page = 1; page <= pages; page++) writePage(xml, page);
+            xml.write("</mediawiki>\n");
+        }
+        return Files.size(out);
+    }
+
+    private void writePage(Writer xml, int id) throws IOException {
+        String title = pick(titles) + " (" + id + ")";
+        String text = random.nextDouble() < pathologicalRate
+                ? pathologicalText(title) : pageText(title, pageLength());
+        xml.write("  <page>\n    <title>" + escape(title) + "</title>\n    <ns>0</ns>\n"
+                + "    <id>" + id + "</id>\n    <revision>\n      <id>" + (100000000L + id)
+                + "</id>\n      <timestamp>2016-01-01T00:00:00Z</timestamp>\n"
+                + "      <model>wikitext</model>\n      <format>text/x-wiki</format>\n"
+                + "      <text xml:space=\"preserve\">");
+        xml.write(escape(text));
+        xml.write("</text>\n    </revision>\n  </page>\n");
+    }
+
+    /** a page length in words, log-normal like the seed's */
+    private int pageLength() {
+        double log = meanLogLength + sdLogLength * random.nextGaussian();
+        return (int) Math.max(1, Math.min(1 << 20, Math.exp(log) * lengthScale));
+    }
+
+    private String pageText(String title, int length) {
+
+        StringBuilder text = new StringBuilder(length * 8);
+        text.append("{{").append(pick(templates)).append("\n| name = ").append(title).append("\n}}\n");
+        text.append("'''").append(title).append("''' ");
+
+        int sentence = 0;
+        for (int i = 0; i < length; i++) {
+            double roll = random.nextDouble();
+            if (roll < linkDensity) {
+                String target = pick(linkTargets);
+                if (random.nextBoolean()) text.append("[[").append(target).append("]]");
+                else text.append("[[").append(target).append('|').append(pick(words)).append("]]");
+            } else if (roll < linkDensity + templateDensity) {
+                text.append("{{").append(pick(templates)).append("}}");
+            } else {
+                text.append(pick(words));
+            }
+            if (++sentence >= 8 + random.nextInt(16) || i == length - 1) {
+                text.append('.');
+                if (random.nextDouble() < citationDensity) text.append(citation());
+                text.append(random.nextInt(6) == 0 ? "\n\n" : " ");
+                sentence = 0;
+            } else {
+                text.append(' ');
+            }
+        }
+
+        text.append("\n== References ==\n{{Reflist}}\n\n");
+        int count = 3 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            text.append("[[Category:").append(pick(categories)).append("]]\n");
+        }
+        return text.toString();
+    }
+
+    private String citation() {
+        return "<ref>{{cite web |url=http://example.org/" + random.nextInt(1 << 20)
+                + " |title=" + pick(words) + " " + pick(words) + " " + pick(words)
+                + " |publisher=" + pick(words) + "}}</ref>";
+    }
+
+    private String pathologicalText(String title) {
+        StringBuilder text = new StringBuilder();
+        switch (random.nextInt(6)) {
+            case 0:     // templates nested hundreds deep
+                for (int i = 0; i < 500; i++) text.append("{{").append(pick(templates)).append('|');
+                text.append(pick(words));
+                for (int i = 0; i < 500; i++) text.append("}}");
+                return text.toString();
+            case 1:     // unbalanced markup
+                for (int i = 0; i < 2000; i++) {
+                    text.append(random.nextBoolean() ? "[[" : "}}}").append(pick(words)).append(' ');
+                    if (random.nextInt(10) == 0) text.append("{{{{=== ]] [");
+                }
+                return text.toString();
+            case 2:     // a huge page
+                return pageText(title, pageLength() * 50);
+            case 3:     // nothing at all
+                return "";
+            case 4:     // one enormous token
+                for (int i = 0; i < 1 << 18; i++) text.append((char) ('a' + random.nextInt(26)));
+                return text.toString();
+            default:    // entities, character references and astral characters
+                for (int i = 0; i < 2000; i++) {
+                    text.append(pick(words)).append(" &amp;nbsp; &lt;b&gt; ")
+                            .append(Character.toChars(0x1F600 + random.nextInt(64))).append(' ');
+                }
+                return text.toString();
+        }
+    }
+
+    private String pick(String[] from) {
+        return from[random.nextInt(from.length)];
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': escaped.append("&amp;"); break;
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '"': escaped.append("&quot;"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Writes a synthetic export.
+     *
+     * Arguments: "--out FILE" (xmlInput/synthetic.xml), "--pages N" (1000),
+     * "--seed N" (1), "--seed-file FILE" (the test export), "--length-scale X",
+     * "--link-density X", "--template-density X", "--citation-density X" and
+     * "--pathological X", a share from 0 to 1.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        String outFN = "xmlInput/synthetic.xml";
+        String seedFN = "xmlInput/WikiParseTestFile.xml";
+        int pages = 1000;
+        long seed = 1;
+        double[] settings = { 1, 0.05, 0.02, 0.1, 0 };
+        String[] names = { "--length-scale", "--link-density",
+            "--template-density", "--citation-density", "--pathological" };
+
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--out")) outFN = args[++i];
+            else if (args[i].equals("--seed-file")) seedFN = args[++i];
+            else if (args[i].equals("--pages")) pages = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--seed")) seed = Long.parseLong(args[++i]);
+            else {
+                for (int s = 0; s < names.length; s++) {
+                    if (args[i].equals(names[s])) settings[s] = Double.parseDouble(args[++i]);
+                }
+            }
+        }
+
+        try {
+            long bytes = new SyntheticDumpGenerator(seedFN, seed)
+                    .setLengthScale(settings[0]).setLinkDensity(settings[1])
+                    .setTemplateDensity(settings[2]).setCitationDensity(settings[3])
+                    .setPathologicalRate(settings[4]).write(outFN, pages);
+            System.out.println("Wrote " + pages + " pages, " + bytes + " bytes, to " + outFN);
+        } catch (IOException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            System.err.println("!! Synthetic Dump Failed !!");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of turning one page's wikitext into a WikipediaPage: the whole
+ * construction, and each extraction on its own, driven by the same scanner
+ * the constructor uses. The text normalization for the POS tagger is the
+ * NormalizedTextExtractor.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WikiTextBenchmark {
+
+    @Param({ "small", "median", "large" })
+    public String size;
+
+    private WikiPageSource page;
+    private char[] symbols;
+
+    @Setup
+    public void setUp() throws IOException {
+        page = PageFixtures.load(size);
+        symbols = page.getText().toCharArray();
+    }
+
+    @Benchmark
+    public WikipediaPage construct() {
+        return new WikipediaPage(page.getTitle(), page.getRevision(),
+                page.getText());
+    }
+
+    @Benchmark
+    public Object categories() {
+        CategoryExtractor extractor = new CategoryExtractor();
+        WikiTextScanner.scan(symbols, extractor);
+        return extractor.getCategories();
+    }
+
+    @Benchmark
+    public Object citations() {
+        CitationExtractor extractor = new CitationExtractor();
+        WikiTextScanner.scan(symbols, extractor);
+        return extractor.getCitations();
+    }
+
+    @Benchmark
+    public Object anchors() {
+        AnchorExtractor extractor = new AnchorExtractor();
+        WikiTextScanner.scan(symbols, extractor);
+        return extractor.getAnchors();
+    }
+
+    @Benchmark
+    public String normalizeForPOSTagging() {
+        NormalizedTextExtractor extractor = new NormalizedTextExtractor();
+        WikiTextScanner.scan(symbols, extractor);
+        return extractor.getText();
+    }
+}
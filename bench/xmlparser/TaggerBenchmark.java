@@ -0,0 +1,115 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import wikiparser.NormalizedTextExtractor;
+import wikiparser.PageFixtures;
+import wikiparser.WikiPageSource;
+import wikiparser.WikiTextScanner;
+
+/**
+ * MaxentTagger throughput on the normalized text of a real page, tagged whole
+ * as makeTextFile does, and on a single sentence of it. The tokens counter
+ * reports tokens tagged per second next to the calls per second.
+ *
+ * The model is loaded from the file named by the tagger.model system
+ * property, by default the one xmlParser loads from the working directory.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TaggerBenchmark {
+
+    @Param({ "median", "large" })
+    public String size;
+
+    private MaxentTagger tagger;
+    private String text;
+    private String sentence;
+
+    /**
+     * Counts the tokens tagged, which JMH reports as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() { tokens = 0; }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        tagger = new MaxentTagger(System.getProperty("tagger.model",
+                "english-bidirectional-distsim.tagger"));
+        WikiPageSource page = PageFixtures.load(size);
+        NormalizedTextExtractor extractor = new NormalizedTextExtractor();
+        WikiTextScanner.scan(page.getText().toCharArray(), extractor);
+        text = extractor.getText();
+        // the first sentence with a few words in it
+        sentence = text;
+        for (String candidate : text.split("(?<=\\.)\\s+")) {
+            if (candidate.split("\\s+").length >= 8) {
+                sentence = candidate;
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public String tagPage(Tokens counter) {
+        String tagged = tagger.tagString(text);
+        counter.tokens += TaggingStage.countTokens(tagged);
+        return tagged;
+    }
+
+    @Benchmark
+    public String tagSentence(Tokens counter) {
+        String tagged = tagger.tagString(sentence);
+        counter.tokens += TaggingStage.countTokens(tagged);
+        return tagged;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.ArrayList;
+
+/**
+ * Collects the link targets of a page, skipping category links and any link
+ * inside of a template.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class AnchorExtractor implements WikiTextHandler {
+
+    private static final String CATEGORY_PREFIX = "Category:";
+
+    private final ArrayList<String> anchorsList = new ArrayList<>();
+    private final StringBuilder buff = new StringBuilder();
+    private boolean reading = false;
+    private boolean linked = false; // a link has been opened on the page
+    private int braceCount = 0;     // only counted while not in a link
+
+    public ArrayList<String> getAnchors() { return this.anchorsList; }
+
+    @Override
+    public void linkStart() {
+        if (braceCount > 0) return;
+        buff.setLength(0);
+        reading = true;
+        linked = true;
+    }
+
+    @Override
+    public void linkEnd() {
+
+        if (braceCount > 0 || !linked) return;
+
+        String possibleAnchor = buff.toString();
+        reading = false;
+
+        if (possibleAnchor.startsWith(CATEGORY_PREFIX)) {
+            // a category link, already parsed from text ...
+            return;
+        }
+
+        int bar = possibleAnchor.indexOf('|');
+        if (bar > 0) {
+            anchorsList.add(possibleAnchor.substring(0, bar));
+        } else {
+            anchorsList.add(possibleAnchor);
+        }
+    }
+
+    // a link is only opened outside of braces, so while reading the count
+    // is never positive and every character goes into the buffer
+
+    @Override
+    public void templateStart() {
+        if (reading) buff.append("{{");
+        else braceCount += 2;
+    }
+
+    @Override
+    public void templateEnd() { braceClose(); }
+
+    @Override
+    public void braceOpen() {
+        if (reading) buff.append('{');
+        else braceCount++;
+    }
+
+    @Override
+    public void braceClose() {
+        if (reading) buff.append('}');
+        else braceCount--;
+    }
+
+    @Override
+    public void headingMarker() { if (reading) buff.append('='); }
+
+    @Override
+    public void text(char[] symbols, int start, int length) {
+        if (reading) buff.append(symbols, start, length);
+    }
+}
@@ -0,0 +1,465 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decompresses bzip2 data, so dumps can be read in the .xml.bz2 form that
+ * Wikimedia ships them in without a separate decompression pass.
+ *
+ * Concatenated streams, such as the multistream dumps, are read one after
+ * the other as a single stream of bytes. Each block is Huffman decoded and
+ * its Burrows-Wheeler transform is inverted up front, the final run-length
+ * decoding is done lazily as bytes are read, and both the block and stream
+ * CRCs are checked.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class BZip2InputStream extends InputStream {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+    private static final int MAX_GROUPS = 6;
+    private static final int GROUP_SIZE = 50;
+    private static final int MAX_ALPHA_SIZE = 258;
+    private static final int MAX_CODE_LEN = 20;
+    private static final int MAX_SELECTORS = 32768;
+    private static final int RUNA = 0;
+    private static final int RUNB = 1;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // the MSB first CRC-32 used by bzip2
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc < 0) ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private final InputStream in;
+    private final boolean concatenated;     // keep going after a stream ends
+
+    // bit reader state
+    private long bitBuffer;
+    private int bitCount;
+
+    // stream state
+    private int blockSize;                  // most bytes in a block
+    private int streamCRC;                  // combined CRC of the blocks read
+    private boolean endOfData;
+
+    // block state, the inverse BWT is walked as bytes are read
+    private byte[] block;                   // ll, the BWT of the block
+    private int[] tt;                       // the inverse BWT links
+    private boolean inBlock;                // a block of the stream is open
+    private int blockCRC;                   // the CRC stored for the block
+    private int computedCRC;                // the CRC of the bytes so far
+    private int tPos;                       // next link to follow in tt
+    private int remaining;                  // BWT bytes left in the block
+
+    // run-length decoding state
+    private int lastByte = -1;
+    private int runLength;
+    private int repeat;                     // copies of lastByte still owed
+
+    // decoding tables, kept between blocks
+    private final byte[] selectors = new byte[MAX_SELECTORS];
+    private final byte[][] lengths = new byte[MAX_GROUPS][MAX_ALPHA_SIZE];
+    private final int[][] limit = new int[MAX_GROUPS][MAX_CODE_LEN + 2];
+    private final int[][] base = new int[MAX_GROUPS][MAX_CODE_LEN + 2];
+    private final int[][] perm = new int[MAX_GROUPS][MAX_ALPHA_SIZE];
+    private final int[] minLens = new int[MAX_GROUPS];
+    private final int[] counts = new int[256];
+
+    /**
+     * Reads every concatenated stream in the input.
+     *
+     * @param in the compressed data, starting with the "BZh" signature
+     * @throws IOException if the input is not bzip2 data
+     */
+    public BZip2InputStream(InputStream in) throws IOException {
+        this(in, true);
+    }
+
+    /**
+     * @param in the compressed data, starting with the "BZh" signature
+     * @param concatenated false to stop after the first stream
+     * @throws IOException if the input is not bzip2 data
+     */
+    public BZip2InputStream(InputStream in, boolean concatenated)
+            throws IOException {
+        this.in = (in instanceof BufferedInputStream)
+                ? in : new BufferedInputStream(in, 1 << 16);
+        this.concatenated = concatenated;
+        if (!readStreamHeader(true)) {
+            throw new IOException("not a bzip2 stream");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) return 0;
+
+        int count = 0;
+
+        while (count < len) {
+
+            if (repeat > 0) {
+                // owed copies of a run, from the run-length count byte
+                int n = Math.min(repeat, len - count);
+                for (int i = 0; i < n; i++) {
+                    b[off + count++] = (byte) lastByte;
+                    updateCRC(lastByte);
+                }
+                repeat -= n;
+                continue;
+            }
+
+            if (remaining == 0) {
+                if (count > 0) break;   // hand back what we have first
+                if (!nextBlock()) return -1;
+                continue;
+            }
+
+            int current = block[tPos] & 0xFF;
+            tPos = tt[tPos];
+            remaining--;
+
+            if (runLength == 4) {
+                // the byte after four of a kind is a repeat count
+                repeat = current;
+                runLength = 0;
+                continue;
+            }
+
+            if (current == lastByte) {
+                runLength++;
+            } else {
+                lastByte = current;
+                runLength = 1;
+            }
+
+            b[off + count++] = (byte) current;
+            updateCRC(current);
+        }
+
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        endOfData = true;
+        block = null;
+        tt = null;
+        in.close();
+    }
+
+    private void updateCRC(int value) {
+        computedCRC = (computedCRC << 8)
+                ^ CRC_TABLE[((computedCRC >>> 24) ^ value) & 0xFF];
+    }
+
+    /**
+     * Finishes the current block and decodes the next one, moving on to the
+     * next concatenated stream when the current one ends.
+     *
+     * @return false at the end of the data
+     * @throws IOException if the data is corrupt
+     */
+    private boolean nextBlock() throws IOException {
+
+        if (endOfData) return false;
+
+        if (inBlock) {
+            if (repeat != 0 || ~computedCRC != blockCRC) {
+                throw new IOException("bzip2 block CRC error");
+            }
+            streamCRC = ((streamCRC << 1) | (streamCRC >>> 31)) ^ blockCRC;
+            inBlock = false;
+        }
+
+        while (true) {
+            long magic = readLong(48);
+            if (magic == BLOCK_MAGIC) {
+                readBlock();
+                return true;
+            }
+            if (magic != END_OF_STREAM_MAGIC) {
+                throw new IOException("bad bzip2 block signature");
+            }
+            if (readBits(32) != streamCRC) {
+                throw new IOException("bzip2 stream CRC error");
+            }
+            bitCount = 0; // streams are padded out to a byte
+            if (!concatenated || !readStreamHeader(false)) {
+                endOfData = true;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param first true for the stream the input has to start with
+     * @return false if the input ended cleanly instead
+     */
+    private boolean readStreamHeader(boolean first) throws IOException {
+        int b = in.read();
+        if (b < 0 && !first) return false;
+        if (b != 'B' || in.read() != 'Z' || in.read() != 'h') {
+            throw new IOException("bad bzip2 stream signature");
+        }
+        int level = in.read() - '0';
+        if (level < 1 || level > 9) {
+            throw new IOException("bad bzip2 block size");
+        }
+        blockSize = level * 100000;
+        streamCRC = 0;
+        return true;
+    }
+
+    /**
+     * Huffman decodes one block into its BWT, then links up the inverse
+     * transform ready for read.
+     */
+    private void readBlock() throws IOException {
+
+        blockCRC = readBits(32);
+        if (readBits(1) != 0) {
+            throw new IOException("randomised bzip2 blocks are not supported");
+        }
+        int origPtr = readBits(24);
+
+        // the symbol map, 16 ranges of 16 byte values each
+        byte[] seqToUnseq = new byte[256];
+        int inUse = 0;
+        int ranges = readBits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((ranges & (0x8000 >>> i)) != 0) {
+                int used = readBits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((used & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[inUse++] = (byte) (i * 16 + j);
+                    }
+                }
+            }
+        }
+        if (inUse == 0) throw new IOException("bzip2 block uses no symbols");
+        int alphaSize = inUse + 2;
+        int endOfBlock = inUse + 1;
+
+        // the Huffman table selectors, move-to-front coded in unary
+        int groups = readBits(3);
+        int selectorCount = readBits(15);
+        if (groups < 2 || groups > MAX_GROUPS || selectorCount < 1) {
+            throw new IOException("bad bzip2 Huffman groups");
+        }
+        byte[] order = { 0, 1, 2, 3, 4, 5 };
+        for (int i = 0; i < selectorCount; i++) {
+            int j = 0;
+            while (readBits(1) != 0) {
+                if (++j >= groups) throw new IOException("bad bzip2 selector");
+            }
+            byte value = order[j];
+            System.arraycopy(order, 0, order, 1, j);
+            order[0] = value;
+            selectors[i] = value;
+        }
+
+        // the delta coded code lengths, one table per group
+        for (int t = 0; t < groups; t++) {
+            int current = readBits(5);
+            int min = 32, max = 0;
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (current < 1 || current > MAX_CODE_LEN) {
+                        throw new IOException("bad bzip2 code length");
+                    }
+                    if (readBits(1) == 0) break;
+                    current += (readBits(1) == 0) ? 1 : -1;
+                }
+                lengths[t][i] = (byte) current;
+                min = Math.min(min, current);
+                max = Math.max(max, current);
+            }
+            makeDecodeTable(t, alphaSize, min, max);
+        }
+
+        if (block == null || block.length < blockSize) {
+            block = new byte[blockSize];
+            tt = new int[blockSize];
+        }
+
+        // Huffman decode and undo the move-to-front and zero run coding
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < 256; i++) mtf[i] = (byte) i;
+        Arrays.fill(counts, 0);
+
+        int size = 0;
+        int groupIndex = -1, groupLeft = 0;
+        int runSize = 0, runWeight = 1;
+
+        while (true) {
+
+            if (groupLeft == 0) {
+                if (++groupIndex >= selectorCount) {
+                    throw new IOException("bzip2 selectors overrun");
+                }
+                groupLeft = GROUP_SIZE;
+            }
+            groupLeft--;
+
+            int symbol = decodeSymbol(selectors[groupIndex]);
+
+            if (symbol == RUNA || symbol == RUNB) {
+                runSize += (symbol + 1) * runWeight;
+                runWeight <<= 1;
+                if (runSize > blockSize) {
+                    throw new IOException("bzip2 run overflows the block");
+                }
+                continue;
+            }
+
+            if (runSize > 0) {
+                if (size + runSize > blockSize) {
+                    throw new IOException("bzip2 block overflow");
+                }
+                byte value = seqToUnseq[mtf[0] & 0xFF];
+                counts[value & 0xFF] += runSize;
+                Arrays.fill(block, size, size + runSize, value);
+                size += runSize;
+                runSize = 0;
+                runWeight = 1;
+            }
+
+            if (symbol == endOfBlock) break;
+
+            if (size >= blockSize) throw new IOException("bzip2 block overflow");
+            int index = symbol - 1;
+            byte next = mtf[index];
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = next;
+            byte value = seqToUnseq[next & 0xFF];
+            counts[value & 0xFF]++;
+            block[size++] = value;
+        }
+
+        if (origPtr >= size) throw new IOException("bad bzip2 origin pointer");
+
+        // link up the inverse Burrows-Wheeler transform
+        int sum = 0;
+        for (int i = 0; i < 256; i++) {
+            int c = counts[i];
+            counts[i] = sum;
+            sum += c;
+        }
+        for (int i = 0; i < size; i++) {
+            tt[counts[block[i] & 0xFF]++] = i;
+        }
+
+        tPos = tt[origPtr];
+        remaining = size;
+        computedCRC = -1;
+        lastByte = -1;
+        runLength = 0;
+        repeat = 0;
+        inBlock = true;
+    }
+
+    private void makeDecodeTable(int t, int alphaSize, int min, int max) {
+
+        int[] lim = limit[t], bas = base[t], per = perm[t];
+        byte[] len = lengths[t];
+
+        int pp = 0;
+        for (int i = min; i <= max; i++) {
+            for (int j = 0; j < alphaSize; j++) {
+                if (len[j] == i) per[pp++] = j;
+            }
+        }
+
+        Arrays.fill(bas, 0);
+        for (int i = 0; i < alphaSize; i++) bas[len[i] + 1]++;
+        for (int i = 1; i < bas.length; i++) bas[i] += bas[i - 1];
+
+        Arrays.fill(lim, -1);
+        int vec = 0;
+        for (int i = min; i <= max; i++) {
+            vec += bas[i + 1] - bas[i];
+            lim[i] = vec - 1;
+            vec <<= 1;
+        }
+        for (int i = min + 1; i <= max; i++) {
+            bas[i] = ((lim[i - 1] + 1) << 1) - bas[i];
+        }
+
+        minLens[t] = min;
+    }
+
+    private int decodeSymbol(int t) throws IOException {
+        int[] lim = limit[t];
+        int n = minLens[t];
+        int code = readBits(n);
+        while (code > lim[n]) {
+            if (++n > MAX_CODE_LEN) throw new IOException("bad bzip2 code");
+            code = (code << 1) | readBits(1);
+        }
+        int index = code - base[t][n];
+        if (index < 0 || index >= MAX_ALPHA_SIZE) {
+            throw new IOException("bad bzip2 code");
+        }
+        return perm[t][index];
+    }
+
+    private int readBits(int n) throws IOException {
+        while (bitCount < n) {
+            int b = in.read();
+            if (b < 0) throw new IOException("truncated bzip2 stream");
+            bitBuffer = (bitBuffer << 8) | b;
+            bitCount += 8;
+        }
+        bitCount -= n;
+        return (int) ((bitBuffer >>> bitCount) & ((1L << n) - 1));
+    }
+
+    private long readLong(int n) throws IOException {
+        long high = readBits(n - 24) & 0xFFFFFFFFL;
+        return (high << 24) | readBits(24);
+    }
+}
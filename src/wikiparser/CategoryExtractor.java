@@ -0,0 +1,81 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.ArrayList;
+
+/**
+ * Collects the [[Category:...]] links of a page, without the prefix.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class CategoryExtractor implements WikiTextHandler {
+
+    private static final String CATEGORY_PREFIX = "Category:";
+
+    private final ArrayList<String> categoriesList = new ArrayList<>();
+    private final StringBuilder buff = new StringBuilder();
+    private boolean reading = false;
+
+    public ArrayList<String> getCategories() { return this.categoriesList; }
+
+    @Override
+    public void linkStart() {
+        buff.setLength(0);
+        reading = true;
+    }
+
+    @Override
+    public void linkEnd() {
+
+        String possibleCategory = buff.toString();
+
+        if (possibleCategory.startsWith(CATEGORY_PREFIX)) {
+            categoriesList.add(
+                possibleCategory.substring(CATEGORY_PREFIX.length()));
+        }
+
+        reading = false;
+    }
+
+    @Override
+    public void templateStart() { if (reading) buff.append("{{"); }
+
+    @Override
+    public void templateEnd() { if (reading) buff.append('}'); }
+
+    @Override
+    public void braceOpen() { if (reading) buff.append('{'); }
+
+    @Override
+    public void braceClose() { if (reading) buff.append('}'); }
+
+    @Override
+    public void headingMarker() { if (reading) buff.append('='); }
+
+    @Override
+    public void text(char[] symbols, int start, int length) {
+        if (reading) buff.append(symbols, start, length);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.ArrayList;
+
+/**
+ * Collects the titles of the {{cite ...|title=...|...}} templates of a page.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class CitationExtractor implements WikiTextHandler {
+
+    private static final String CITATION_PREFIX = "cite";
+    private static final String TITLE_PREFIX = "title";
+    private static final String TITLE_POSTFIX = "|";
+
+    private final ArrayList<String> citationsList = new ArrayList<>();
+    private final StringBuilder buff = new StringBuilder();
+    private boolean reading = false;
+
+    public ArrayList<String> getCitations() { return this.citationsList; }
+
+    @Override
+    public void templateStart() {
+        buff.setLength(0);
+        reading = true;
+    }
+
+    @Override
+    public void templateEnd() {
+
+        String possibleCitation = buff.toString();
+
+        if (possibleCitation.startsWith(CITATION_PREFIX)) {
+
+            int titleStartIndex
+                    = possibleCitation.indexOf(TITLE_PREFIX)
+                    + TITLE_PREFIX.length();
+
+            int titleEndIndex = possibleCitation.indexOf(
+                    TITLE_POSTFIX,      // the character '|'
+                    titleStartIndex);   // index after "title"
+
+            if (titleStartIndex > 0 && titleEndIndex > 0) {
+                citationsList.add(possibleCitation.substring(
+                    titleStartIndex,    // front of title
+                    titleEndIndex));    // end of title
+            }
+        }
+
+        reading = false;
+    }
+
+    @Override
+    public void linkStart() { if (reading) buff.append("[["); }
+
+    @Override
+    public void linkEnd() { if (reading) buff.append(']'); }
+
+    @Override
+    public void braceOpen() { if (reading) buff.append('{'); }
+
+    @Override
+    public void braceClose() { if (reading) buff.append('}'); }
+
+    @Override
+    public void headingMarker() { if (reading) buff.append('='); }
+
+    @Override
+    public void text(char[] symbols, int start, int length) {
+        if (reading) buff.append(symbols, start, length);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The read and extract stages of a pipeline: a feeder thread reads the pages
+ * off of a WikiPageReader, a pool of workers scans each one for the fields of
+ * a projection, and the scanned pages come back in document order.
+ *
+ * The pages in between go through a bounded queue of futures, so when the
+ * stage that takes the pages falls behind the queue fills up and the reader
+ * waits, instead of read pages piling up in memory. How full the queue is
+ * shows in the PipelineMetrics as "extracted".
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class ExtractionStage implements Iterator<WikipediaPage>, Closeable {
+
+    /** marks the end of the input in the queue */
+    private static final CompletableFuture<WikipediaPage> END_OF_PAGES
+            = CompletableFuture.completedFuture(null);
+
+    private final WikiPageReader reader;
+    private final Set<WikipediaPage.Field> projection;
+    private final ExecutorService workers;      // or null to scan as read
+    private final BlockingQueue<CompletableFuture<WikipediaPage>> extracted;
+    private final Thread feeder;
+
+    private CompletableFuture<WikipediaPage> head;  // taken by hasNext
+
+    /**
+     * Starts reading, the reader is not closed along with the stage.
+     *
+     * @param reader the pages to extract
+     * @param projection the fields to extract
+     * @param threads the number of workers, or 0 to scan the pages on the
+     *      feeder thread as they are read, see WikiPageReader.setScanning
+     * @param queueSize the most pages read ahead of the taker, or 0 for four
+     *      per worker
+     */
+    public ExtractionStage(WikiPageReader reader,
+            Set<WikipediaPage.Field> projection, int threads, int queueSize) {
+        this.reader = reader;
+        this.projection = projection;
+        this.extracted = new ArrayBlockingQueue<>(
+                queueSize > 0 ? queueSize : Math.max(1, threads) * 4);
+        reader.setProjection(projection);
+        reader.setScanning(threads <= 0);
+        this.workers = (threads <= 0) ? null
+                : Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "page-extractor");
+                    t.setDaemon(true);
+                    return t;
+                });
+        PipelineMetrics.get().registerQueue("extracted", extracted::size);
+        this.feeder = new Thread(this::feed, "page-feeder");
+        this.feeder.setDaemon(true);
+        this.feeder.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (head == null) {
+            try {
+                head = extracted.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted reading pages", ex);
+            }
+        }
+        return head != END_OF_PAGES;
+    }
+
+    /**
+     * @return the next page, with the fields of the projection extracted
+     */
+    @Override
+    public WikipediaPage next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        CompletableFuture<WikipediaPage> page = head;
+        head = null;
+        try {
+            return page.join();
+        } catch (CompletionException ex) {
+            Throwable cause = (ex.getCause() == null) ? ex : ex.getCause();
+            if (cause instanceof IllegalStateException) {
+                throw (IllegalStateException) cause;
+            }
+            throw new IllegalStateException(
+                    "Failed Page Extraction: " + cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        feeder.interrupt();
+        if (workers != null) workers.shutdownNow();
+        PipelineMetrics.get().unregisterQueue("extracted");
+    }
+
+    /**
+     * Reads every page into the queue, blocking while it is full, a failed
+     * read is passed on to the taker in place of a page.
+     */
+    private void feed() {
+        try {
+            try {
+                while (reader.hasNext()) {
+                    WikiPageSource source = reader.nextSource();
+                    PipelineMetrics.get().setInputPosition(source.getEndOffset());
+                    extracted.put(workers == null
+                            ? CompletableFuture.completedFuture(source.parse(projection))
+                            : CompletableFuture.supplyAsync(
+                                    () -> source.parse(projection).load(), workers));
+                }
+                extracted.put(END_OF_PAGES);
+            } catch (RuntimeException ex) {
+                CompletableFuture<WikipediaPage> failed = new CompletableFuture<>();
+                failed.completeExceptionally(ex);
+                extracted.put(failed);
+            }
+        } catch (InterruptedException ex) {
+            // closed before every page was read
+        }
+    }
+}
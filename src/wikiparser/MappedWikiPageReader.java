@@ -0,0 +1,538 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Reads the pages of an uncompressed export on several threads, by memory
+ * mapping the file instead of streaming it through one XML tokenizer.
+ *
+ * The file is cut into fixed size byte ranges, and every range is read by a
+ * task of its own: the task finds each page start tag inside of its range by
+ * a byte search (markup is never escaped inside of text, so the bytes of a
+ * tag can only be the tag), follows each page to its end tag even past the
+ * end of the range, and pulls the title, ids, and text straight out of the
+ * mapped bytes. A page that uses anything beyond plain elements, character
+ * data and the predefined or numeric entities is handed to StAX instead, so
+ * the result is the same as WikiPageReader gives.
+ *
+ * The finished ranges are taken back in file order through a bounded queue of
+ * futures, so pages still come out in document order.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class MappedWikiPageReader extends WikiPageReader {
+
+    /** the bytes of the file each task is given */
+    private static final int RANGE_BYTES = 4 << 20;
+
+    /** the bytes mapped past the end of a range, for its last page */
+    private static final int TAIL_BYTES = 4 << 20;
+
+    private static final byte[] PAGE_START = ascii("<page>");
+    private static final byte[] PAGE_END = ascii("</page>");
+    private static final byte[] TITLE_START = ascii("<title>");
+    private static final byte[] TITLE_END = ascii("</title>");
+    private static final byte[] ID_START = ascii("<id>");
+    private static final byte[] ID_END = ascii("</id>");
+    private static final byte[] REVISION_START = ascii("<revision>");
+    private static final byte[] TEXT_START = ascii("<text");
+    private static final byte[] TEXT_END = ascii("</text>");
+    private static final byte[] NS_START = ascii("<ns>");
+    private static final byte[] NS_END = ascii("</ns>");
+    private static final byte[] REDIRECT_START = ascii("<redirect");
+
+    /** stands for a page the filter left out */
+    private static final WikiPageSource FILTERED = new WikiPageSource("", "", "");
+
+    private static final Future<ArrayList<WikiPageSource>> END_OF_RANGES
+            = CompletableFuture.completedFuture(null);
+
+    private final String fileName;
+    private final FileChannel file;
+    private final long fileSize;
+    private final int threads;
+    private ExecutorService pool;           // reads the ranges, once started
+    private Thread feeder;                  // submits the ranges in order
+    private BlockingQueue<Future<ArrayList<WikiPageSource>>> ranges;
+    private long nextRange;                 // offset of the next range to read
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger filtered = new AtomicInteger();
+
+    private Iterator<WikiPageSource> current;   // pages of the range being read
+    private boolean finished;
+
+    /**
+     * Maps the file for reading, the caller must close the reader.
+     *
+     * @param xmlFN: the uncompressed XML path/file name
+     * @param threads: the number of byte ranges to read at once
+     * @throws IOException if the file can not be opened
+     */
+    public MappedWikiPageReader(String xmlFN, int threads) throws IOException {
+        this.fileName = xmlFN;
+        this.file = FileChannel.open(Paths.get(xmlFN), StandardOpenOption.READ);
+        this.fileSize = file.size();
+        this.threads = threads;
+    }
+
+    /**
+     * Starts reading at an input offset, which must be the end of a page read
+     * by an earlier run.
+     *
+     * @param offset: the byte offset, as from getEndOffset
+     */
+    @Override
+    public void skipTo(long offset) {
+        if (pool != null) throw new IllegalStateException("already reading");
+        if (offset > fileSize) throw new IllegalArgumentException(
+                "input ends before byte " + offset);
+        nextRange = offset;
+    }
+
+    @Override
+    public int getSkippedCount() { return skipped.get(); }
+
+    @Override
+    public int getFilteredCount() { return filtered.get(); }
+
+    @Override
+    public boolean hasNext() {
+        if (pool == null) start();
+        while (!finished && (current == null || !current.hasNext())) {
+            try {
+                long waiting = System.nanoTime();
+                Future<ArrayList<WikiPageSource>> next = ranges.take();
+                ArrayList<WikiPageSource> pages = next.get();
+                PipelineMetrics.get().recordSince(
+                        PipelineMetrics.Stage.READ, null, waiting);
+                if (pages == null) {
+                    finished = true;
+                } else {
+                    current = pages.iterator();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "interrupted reading " + fileName, ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(
+                        "Failed XML Reading: " + ex.getCause().getMessage(), ex);
+            }
+        }
+        return !finished;
+    }
+
+    @Override
+    public WikiPageSource nextSource() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (pool != null) {
+            feeder.interrupt();
+            pool.shutdownNow();
+            PipelineMetrics.get().unregisterQueue("ranges");
+        }
+        file.close();
+    }
+
+    /**
+     * Starts the tasks, a feeder thread submits the ranges in order and
+     * blocks while the queue is full, which keeps a bounded number of read
+     * ranges in memory.
+     */
+    private void start() {
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "page-range-reader");
+            t.setDaemon(true);
+            return t;
+        });
+        ranges = new ArrayBlockingQueue<>(threads * 2);
+        BlockingQueue<?> queued = ranges;
+        PipelineMetrics.get().registerQueue("ranges", queued::size);
+        ExecutorService readers = pool;
+        feeder = new Thread(() -> {
+            try {
+                for (long start = nextRange; start < fileSize; start += RANGE_BYTES) {
+                    long from = start;
+                    long to = Math.min(fileSize, start + RANGE_BYTES);
+                    ranges.put(readers.submit(() -> readRange(from, to)));
+                }
+                ranges.put(END_OF_RANGES);
+            } catch (InterruptedException | RejectedExecutionException ex) {
+                // closed before the whole file was read
+            }
+        }, "page-range-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /**
+     * Reads every page whose start tag begins inside of the byte range.
+     *
+     * @param from the first byte of the range
+     * @param to the end of the range
+     * @return the pages, in file order
+     * @throws IOException if the file can not be mapped
+     */
+    private ArrayList<WikiPageSource> readRange(long from, long to)
+            throws IOException {
+
+        // the last page may run past the range, map a little of what follows
+        // and more only if its end tag is not in there, up to 2GB in all
+        long mappable = Math.min(fileSize - from, Integer.MAX_VALUE);
+        long length = Math.min(mappable, (to - from) + TAIL_BYTES);
+        MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, from, length);
+        int rangeEnd = (int) (to - from);
+        int limit = (int) length;
+
+        PageFields fields = new PageFields();
+        ArrayList<WikiPageSource> pages = new ArrayList<>();
+        XMLInputFactory factory = null;
+
+        int at = 0;
+        while ((at = indexOf(map, PAGE_START, at, limit)) >= 0 && at < rangeEnd) {
+
+            int end = indexOf(map, PAGE_END, at + PAGE_START.length, limit);
+            while (end < 0 && length < mappable) {
+                // a long page, search on from where the last window ended
+                int searched = Math.max(at + PAGE_START.length, limit - PAGE_END.length + 1);
+                length = Math.min(mappable, length * 2);
+                map = file.map(FileChannel.MapMode.READ_ONLY, from, length);
+                limit = (int) length;
+                end = indexOf(map, PAGE_END, searched, limit);
+            }
+            if (end < 0) {
+                skipped.incrementAndGet();
+                System.err.println("WARNING: skipped page at byte " + (from + at)
+                        + ": cut off by the end of the input");
+                break;
+            }
+            end += PAGE_END.length;
+
+            long started = System.nanoTime();
+            WikiPageSource page = fields.read(map, at, end, from + end, filter);
+            if (page == null) {
+                // not plain enough to take apart by hand, let StAX decide
+                if (factory == null) factory = WikiPageReader.newInputFactory();
+                byte[] bytes = new byte[end - at];
+                ((ByteBuffer) map.duplicate().position(at)).get(bytes);
+                try {
+                    page = WikiPageReader.parsePage(factory,
+                            new ByteArrayInputStream(bytes), from + end, filter);
+                    if (page == null) page = FILTERED;
+                } catch (XMLStreamException ex) {
+                    skipped.incrementAndGet();
+                    System.err.println("WARNING: skipped malformed page at byte "
+                            + (from + at) + ": " + ex.getMessage());
+                }
+            }
+            if (page == FILTERED) {
+                filtered.incrementAndGet();
+            } else if (page != null) {
+                PipelineMetrics.get().recordSince(
+                        PipelineMetrics.Stage.PARSE, page.getTitle(), started);
+                pages.add(page);
+            }
+            at = end;
+        }
+        return pages;
+    }
+
+    /**
+     * Finds the pattern in the buffer, by looking for its first byte and then
+     * comparing the rest.
+     *
+     * @return the index of the first match, or -1
+     */
+    static int indexOf(ByteBuffer data, byte[] pattern, int from, int to) {
+        byte first = pattern[0];
+        int last = to - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (data.get(i) != first) continue;
+            for (int j = 1; j < pattern.length; j++) {
+                if (data.get(i + j) != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String tag) {
+        return tag.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Takes the fields of a plain page element out of the mapped bytes, one
+     * per task since the decoder and its buffer are reused.
+     */
+    private static final class PageFields {
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private CharBuffer chars = CharBuffer.allocate(1 << 16);
+        private final StringBuilder unescaped = new StringBuilder();
+
+        /**
+         * Reads the first title, id, and text of the page just as StAX does,
+         * and the id that follows the revision start tag. The filter is
+         * checked before the text is decoded.
+         *
+         * @return the page, FILTERED if the filter does not take it, or null
+         *      if it has to be parsed by StAX
+         */
+        WikiPageSource read(ByteBuffer map, int start, int end, long endOffset,
+                PageFilter filter) {
+
+            String title = element(map, TITLE_START, TITLE_END, start, end);
+            String id = element(map, ID_START, ID_END, start, end);
+            if (title == null || id == null) return null;
+
+            String revisionId = "";
+            int revision = indexOf(map, REVISION_START, start, end);
+            if (revision >= 0) {
+                // the page id has to come first, or it is the revision's
+                if (indexOf(map, ID_START, start, revision) < 0) return null;
+                int tag = skipSpace(map, revision + REVISION_START.length, end);
+                if (indexOf(map, ID_START, tag, tag + ID_START.length) != tag) {
+                    return null;
+                }
+                revisionId = element(map, ID_START, ID_END, tag, end);
+                if (revisionId == null) return null;
+            }
+
+            if (filter != null) {
+                // all the filter looks at comes before the revision
+                int head = (revision >= 0) ? revision : end;
+                String ns = null;
+                if (indexOf(map, NS_START, start, head) >= 0) {
+                    ns = element(map, NS_START, NS_END, start, head);
+                    if (ns == null) return null;
+                }
+                int redirect = indexOf(map, REDIRECT_START, start, head);
+                while (redirect >= 0
+                        && !endsName(map.get(redirect + REDIRECT_START.length))) {
+                    redirect = indexOf(map, REDIRECT_START, redirect + 1, head);
+                }
+                if (!filter.accept(ns, redirect >= 0, title, id)) return FILTERED;
+            }
+
+            String text = "";
+            int tag = indexOf(map, TEXT_START, start, end);
+            while (tag >= 0 && !endsName(map.get(tag + TEXT_START.length))) {
+                tag = indexOf(map, TEXT_START, tag + 1, end); // ie. <textarea
+            }
+            if (tag >= 0) {
+                int close = tagEnd(map, tag + TEXT_START.length, end);
+                if (close < 0) return null;
+                if (map.get(close - 1) != '/') {
+                    int textEnd = indexOf(map, TEXT_END, close + 1, end);
+                    if (textEnd < 0) return null;
+                    text = content(map, close + 1, textEnd);
+                    if (text == null) return null;
+                }
+            }
+
+            return new WikiPageSource(title, id, revisionId, text, endOffset);
+        }
+
+        /**
+         * @return the content of the first such element, or null if it is
+         *      missing or not plain
+         */
+        private String element(ByteBuffer map, byte[] open, byte[] close,
+                int start, int end) {
+            int from = indexOf(map, open, start, end);
+            if (from < 0) return null;
+            from += open.length;
+            int to = indexOf(map, close, from, end);
+            if (to < 0) return null;
+            return content(map, from, to);
+        }
+
+        /**
+         * Decodes character data, normalizing line ends and replacing entity
+         * references as an XML parser would.
+         *
+         * @return the text, or null if it holds markup, an unknown entity, or
+         *      anything else that is not plain character data
+         */
+        private String content(ByteBuffer map, int from, int to) {
+
+            ByteBuffer bytes = map.duplicate();
+            bytes.limit(to).position(from);
+            if (chars.capacity() < to - from) {
+                chars = CharBuffer.allocate(Math.max(to - from, chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(bytes, chars, true);
+            if (result.isError() || decoder.flush(chars).isError()) return null;
+            chars.flip();
+
+            char[] text = chars.array();
+            int length = chars.limit();
+            boolean plain = true;
+            for (int i = 0; i < length; i++) {
+                char c = text[i];
+                if (c < ' ' || c == '&' || c == '<' || c == '>' || c >= 0xFFFE) {
+                    plain = false;
+                    break;
+                }
+            }
+            if (plain) return new String(text, 0, length);
+
+            unescaped.setLength(0);
+            for (int i = 0; i < length; i++) {
+                char c = text[i];
+                if (c == '<' || c == 0xFFFE || c == 0xFFFF) {
+                    return null;
+                } else if (c < ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return null;
+                } else if (c == '>' && i >= 2 && text[i - 1] == ']'
+                        && text[i - 2] == ']') {
+                    return null; // "]]>" may not appear in content
+                } else if (c == '\r') {
+                    unescaped.append('\n');
+                    if (i + 1 < length && text[i + 1] == '\n') i++;
+                } else if (c == '&') {
+                    int semicolon = -1;
+                    for (int j = i + 1; j < length && j < i + 12; j++) {
+                        if (text[j] == ';') {
+                            semicolon = j;
+                            break;
+                        }
+                    }
+                    if (semicolon < 0) return null;
+                    if (!reference(new String(text, i + 1, semicolon - i - 1))) {
+                        return null;
+                    }
+                    i = semicolon;
+                } else {
+                    unescaped.append(c);
+                }
+            }
+            return unescaped.toString();
+        }
+
+        /**
+         * Appends the character an entity or character reference stands for.
+         *
+         * @return false if it is not a predefined entity or a legal character
+         */
+        private boolean reference(String name) {
+            switch (name) {
+                case "lt": unescaped.append('<'); return true;
+                case "gt": unescaped.append('>'); return true;
+                case "amp": unescaped.append('&'); return true;
+                case "quot": unescaped.append('"'); return true;
+                case "apos": unescaped.append('\''); return true;
+            }
+            if (name.length() < 2 || name.charAt(0) != '#') return false;
+            int codePoint;
+            try {
+                codePoint = (name.charAt(1) == 'x')
+                        ? Integer.parseInt(name.substring(2), 16)
+                        : Integer.parseInt(name.substring(1));
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            boolean legal = codePoint == 0x9 || codePoint == 0xA
+                    || codePoint == 0xD
+                    || (codePoint >= 0x20 && codePoint <= 0xD7FF)
+                    || (codePoint >= 0xE000 && codePoint <= 0xFFFD)
+                    || (codePoint >= 0x10000 && codePoint <= 0x10FFFF);
+            if (!legal) return false;
+            unescaped.appendCodePoint(codePoint);
+            return true;
+        }
+
+        private static int skipSpace(ByteBuffer map, int at, int end) {
+            while (at < end && isSpace(map.get(at))) at++;
+            return at;
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+
+        private static boolean endsName(byte b) {
+            return b == '>' || b == '/' || isSpace(b);
+        }
+
+        /**
+         * @return the index of the '>' ending the tag, or -1 if an attribute
+         *      value holds one
+         */
+        private static int tagEnd(ByteBuffer map, int at, int end) {
+            byte quote = 0;
+            for (int i = at; i < end; i++) {
+                byte b = map.get(i);
+                if (quote != 0) {
+                    if (b == quote) quote = 0;
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '<') {
+                    return -1;
+                } else if (b == '>') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decompresses a multistream bzip2 dump on several threads.
+ *
+ * Every stream of a multistream dump starts on a byte boundary with its own
+ * "BZh" header, and can be decompressed on its own. A splitter thread reads
+ * the compressed file in order, cutting it at each stream header, and hands
+ * the streams to a pool of inflaters. The decompressed streams are read back
+ * in file order through a bounded queue of futures, so the result is the same
+ * bytes a sequential BZip2InputStream would give.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class MultistreamBZip2InputStream extends InputStream {
+
+    /** the largest single compressed stream that will be buffered */
+    private static final int MAX_STREAM_BYTES = 64 << 20;
+
+    /** how far into a file to look for a second stream */
+    private static final int PROBE_BYTES = 4 << 20;
+
+    /** "BZh", the block size digit, and then a block or end of stream magic */
+    private static final int STREAM_HEADER_LENGTH = 10;
+
+    private static final Future<byte[]> END_OF_STREAMS
+            = CompletableFuture.completedFuture(null);
+
+    private final String fileName;
+    private final ExecutorService inflaters;    // decompress the streams
+    private final Thread splitter;              // finds the stream headers
+    private final BlockingQueue<Future<byte[]>> streams;
+
+    private byte[] current = new byte[0];       // the stream being read
+    private int position;                       // next byte of current
+    private boolean endOfData;
+
+    /**
+     * Starts splitting and decompressing the file in the background.
+     *
+     * @param fn the .bz2 file to read
+     * @param threads the number of streams to decompress at once
+     * @throws IOException if the file can not be opened
+     */
+    public MultistreamBZip2InputStream(String fn, int threads)
+            throws IOException {
+        this.fileName = fn;
+        InputStream file = new BufferedInputStream(new FileInputStream(fn), 1 << 16);
+        this.inflaters = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bzip2-inflater");
+            t.setDaemon(true);
+            return t;
+        });
+        this.streams = new ArrayBlockingQueue<>(threads * 2);
+        PipelineMetrics.get().registerQueue("bzip2-streams", streams::size);
+        this.splitter = new Thread(() -> split(file), "bzip2-splitter");
+        this.splitter.setDaemon(true);
+        this.splitter.start();
+    }
+
+    /**
+     * Checks whether a bzip2 file holds more than one stream, by looking for
+     * the header of a second stream near the start of the file.
+     *
+     * @param fn the .bz2 file
+     * @return true if a second stream starts within the first few MB
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isMultistream(String fn) throws IOException {
+        byte[] head = new byte[PROBE_BYTES];
+        int length = 0;
+        try (InputStream in = new FileInputStream(fn)) {
+            int n;
+            while (length < head.length
+                    && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+        }
+        return findStreamHeader(head, 1, length) >= 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        endOfData = true;
+        splitter.interrupt();
+        inflaters.shutdownNow();
+        streams.clear();
+        PipelineMetrics.get().unregisterQueue("bzip2-streams");
+    }
+
+    /**
+     * Moves on to the next decompressed stream once the current one is used.
+     *
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            if (endOfData) return false;
+            try {
+                Future<byte[]> next = streams.take();
+                byte[] data = next.get();
+                if (data == null) {
+                    endOfData = true;
+                    return false;
+                }
+                current = data;
+                position = 0;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted reading " + fileName, ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The splitter thread: cuts the file at every stream header and queues
+     * up the decompression of each piece, in order.
+     */
+    private void split(InputStream file) {
+
+        byte[] pending = new byte[1 << 20];     // the stream being cut out
+        int length = 0;                         // bytes held in pending
+        int searched = 1;                       // where to resume searching
+
+        try (InputStream in = file) {
+            while (true) {
+
+                if (length == pending.length) {
+                    if (length >= MAX_STREAM_BYTES) {
+                        throw new IOException("bzip2 stream over "
+                                + (MAX_STREAM_BYTES >> 20) + "MB, "
+                                + fileName + " is not a multistream file");
+                    }
+                    pending = Arrays.copyOf(pending, length * 2);
+                }
+
+                int n = in.read(pending, length, pending.length - length);
+                if (n < 0) break;
+                length += n;
+
+                int header;
+                while ((header = findStreamHeader(pending, searched, length)) > 0) {
+                    submit(Arrays.copyOf(pending, header));
+                    System.arraycopy(pending, header, pending, 0, length - header);
+                    length -= header;
+                    searched = 1;
+                }
+                // a header may straddle the end of what has been read
+                searched = Math.max(1, length - STREAM_HEADER_LENGTH + 1);
+            }
+
+            if (length > 0) submit(Arrays.copyOf(pending, length));
+            streams.put(END_OF_STREAMS);
+
+        } catch (InterruptedException ex) {
+            // closed before the whole file was read
+        } catch (IOException ex) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            try {
+                streams.put(failed);
+            } catch (InterruptedException closed) {
+                // nobody is left to tell
+            }
+        }
+    }
+
+    private void submit(byte[] compressed) throws InterruptedException {
+        streams.put(inflaters.submit(() -> inflate(compressed)));
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 5);
+        byte[] buff = new byte[1 << 16];
+        try (InputStream in = new BZip2InputStream(
+                new ByteArrayInputStream(compressed), false)) {
+            int n;
+            while ((n = in.read(buff)) > 0) out.write(buff, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Finds the next byte aligned stream header.
+     *
+     * @param data the bytes to search
+     * @param from the first index to consider
+     * @param to the end of the valid bytes
+     * @return the index of the header, or -1
+     */
+    static int findStreamHeader(byte[] data, int from, int to) {
+        for (int i = from; i <= to - STREAM_HEADER_LENGTH; i++) {
+            if (data[i] != 'B' || data[i + 1] != 'Z' || data[i + 2] != 'h'
+                    || data[i + 3] < '1' || data[i + 3] > '9') continue;
+            if (matches(data, i + 4, 0x31, 0x41, 0x59, 0x26, 0x53, 0x59)
+                    || matches(data, i + 4, 0x17, 0x72, 0x45, 0x38, 0x50, 0x90)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] data, int at, int... magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if ((data[at + i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+}
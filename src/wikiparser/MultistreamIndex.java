@@ -0,0 +1,150 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The *-multistream-index.txt of a multistream dump, held compactly enough to
+ * keep the whole index of the English Wikipedia in memory.
+ *
+ * Each line of the index is "offset:pageid:title", where offset is the byte
+ * offset of the bzip2 stream holding the page. The distinct offsets are kept
+ * in one array, and each title is kept only as its hash packed with the
+ * index of its stream, so a lookup is a binary search. Hashes can collide, so
+ * a lookup may name a stream that does not hold the title, the pages read from
+ * a stream still have to be checked against the title.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class MultistreamIndex {
+
+    private final long[] streamOffsets;     // distinct offsets, file order
+    private final long[] titleEntries;      // title hash << 32 | stream index
+
+    private MultistreamIndex(long[] streamOffsets, long[] titleEntries) {
+        this.streamOffsets = streamOffsets;
+        this.titleEntries = titleEntries;
+    }
+
+    /**
+     * Loads an index file, which may itself be bzip2 compressed.
+     *
+     * @param indexFN the index path/file name
+     * @return the loaded index
+     * @throws IOException if the file can not be read or is malformed
+     */
+    public static MultistreamIndex load(String indexFN) throws IOException {
+
+        long[] offsets = new long[1 << 16];
+        long[] entries = new long[1 << 16];
+        int offsetCount = 0, entryCount = 0;
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                WikiDumpInput.open(indexFN, 1), StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = in.readLine()) != null) {
+
+                if (line.isEmpty()) continue;
+
+                int first = line.indexOf(':');
+                int second = line.indexOf(':', first + 1);
+                if (first < 0 || second < 0) {
+                    throw new IOException("malformed index line: " + line);
+                }
+
+                long offset = Long.parseLong(line.substring(0, first));
+                String title = unescape(line.substring(second + 1));
+
+                // the pages of a stream are listed together
+                if (offsetCount == 0 || offsets[offsetCount - 1] != offset) {
+                    if (offsetCount == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsetCount * 2);
+                    }
+                    offsets[offsetCount++] = offset;
+                }
+
+                if (entryCount == entries.length) {
+                    entries = Arrays.copyOf(entries, entryCount * 2);
+                }
+                entries[entryCount++] = pack(title.hashCode(), offsetCount - 1);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("malformed index offset: " + ex.getMessage());
+        }
+
+        offsets = Arrays.copyOf(offsets, offsetCount);
+        entries = Arrays.copyOf(entries, entryCount);
+        Arrays.sort(entries);
+        return new MultistreamIndex(offsets, entries);
+    }
+
+    /**
+     * @return the number of titles in the index
+     */
+    public int size() { return this.titleEntries.length; }
+
+    /**
+     * @param title the page title
+     * @return the offsets of every stream that may hold the page
+     */
+    public long[] findStreamOffsets(String title) {
+
+        int hash = title.hashCode();
+        int at = Arrays.binarySearch(titleEntries, pack(hash, 0));
+        if (at < 0) at = -at - 1;
+
+        int end = at;
+        while (end < titleEntries.length
+                && (int) (titleEntries[end] >> 32) == hash) end++;
+
+        long[] found = new long[end - at];
+        for (int i = at; i < end; i++) {
+            found[i - at] = streamOffsets[(int) titleEntries[i]];
+        }
+        return found;
+    }
+
+    private static long pack(int hash, int stream) {
+        return ((long) hash << 32) | (stream & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The index escapes titles the same way the XML does.
+     *
+     * @param title the title as written in the index
+     * @return the title as written in the page's title element
+     */
+    static String unescape(String title) {
+        if (title.indexOf('&') < 0) return title;
+        return title.replace("&quot;", "\"").replace("&#039;", "'")
+                .replace("&#39;", "'").replace("&lt;", "<")
+                .replace("&gt;", ">").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,72 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+/**
+ * Reduces the page to the letters, digits, and spaces of its lead section,
+ * outside of any template, for the POS tagger.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class NormalizedTextExtractor implements WikiTextHandler {
+
+    private final StringBuilder buff = new StringBuilder();
+    private int braceCount = 0;
+    private boolean done = false;   // the first heading ends the lead
+
+    public String getText() { return buff.toString(); }
+
+    @Override
+    public void headingMarker() { done = true; }
+
+    @Override
+    public void templateStart() { braceCount += 2; }
+
+    @Override
+    public void templateEnd() { braceCount--; }
+
+    @Override
+    public void braceOpen() { braceCount++; }
+
+    @Override
+    public void braceClose() { braceCount--; }
+
+    @Override
+    public void text(char[] symbols, int start, int length) {
+
+        if (done || braceCount > 0) return;
+
+        for (int i = start; i < start + length; i++) {
+
+            char current = symbols[i];
+
+            boolean digit = (current >= '0') && (current <= '9');
+            boolean upper = (current >= 'A') && (current <= 'Z');
+            boolean lower = (current >= 'a') && (current <= 'z');
+            boolean space = (current == ' ');
+
+            if (digit || upper || lower || space) buff.append(current);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which pages are read at all, from the fields that come before the
+ * revision in a page element: the namespace, the redirect, the title and the
+ * page id. The readers check it before the text of a page is decoded, so a
+ * page left out costs little more than finding its end tag.
+ *
+ * An empty filter takes every page, each condition that is set narrows it.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class PageFilter {
+
+    private BitSet namespaces;              // the namespaces taken, or null
+    private boolean skipRedirects;
+    private String titlePrefix;
+    private Pattern titlePattern;
+    private final ArrayList<long[]> idRanges = new ArrayList<>();
+
+    /**
+     * Takes only pages in the namespace, ie. 0 for articles or 14 for
+     * categories. A page without an ns element counts as namespace 0.
+     *
+     * @param ns the namespace number, may be called more than once
+     */
+    public void addNamespace(int ns) {
+        if (namespaces == null) namespaces = new BitSet();
+        if (ns >= 0) namespaces.set(ns);
+    }
+
+    /**
+     * @param skip true to leave out every page that is a redirect
+     */
+    public void setSkipRedirects(boolean skip) { this.skipRedirects = skip; }
+
+    /**
+     * @param prefix the text every title taken starts with, or null
+     */
+    public void setTitlePrefix(String prefix) { this.titlePrefix = prefix; }
+
+    /**
+     * @param regex a pattern found somewhere in every title taken, or null
+     */
+    public void setTitlePattern(String regex) {
+        this.titlePattern = (regex == null) ? null : Pattern.compile(regex);
+    }
+
+    /**
+     * Takes pages whose id is in the range, may be called more than once.
+     *
+     * @param from the first page id taken
+     * @param to the last page id taken
+     */
+    public void addIdRange(long from, long to) {
+        idRanges.add(new long[] { from, to });
+    }
+
+    /**
+     * @return true if the filter takes every page
+     */
+    public boolean isEmpty() {
+        return namespaces == null && !skipRedirects && titlePrefix == null
+                && titlePattern == null && idRanges.isEmpty();
+    }
+
+    /**
+     * @param ns the namespace of the page, or null if it has no ns element
+     * @param redirect true if the page has a redirect element
+     * @param title the page title
+     * @param id the page id
+     * @return true if the page is to be read
+     */
+    public boolean accept(String ns, boolean redirect, String title, String id) {
+        if (skipRedirects && redirect) return false;
+        if (namespaces != null) {
+            int number = (ns == null) ? 0 : (int) PageManifest.parseId(ns);
+            if (number < 0 || !namespaces.get(number)) return false;
+        }
+        if (titlePrefix != null && !title.startsWith(titlePrefix)) return false;
+        if (titlePattern != null && !titlePattern.matcher(title).find()) return false;
+        if (!idRanges.isEmpty()) {
+            long pageId = PageManifest.parseId(id);
+            boolean inRange = false;
+            for (long[] range : idRanges) {
+                if (pageId >= range[0] && pageId <= range[1]) {
+                    inRange = true;
+                    break;
+                }
+            }
+            if (!inRange) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a filter option off of the command line.
+     *
+     * "--ns 0,14" takes the listed namespaces, "--no-redirects" leaves out
+     * redirects, "--title-prefix P" and "--title-regex R" match the titles,
+     * and "--ids 1-1000,5000" takes the listed page ids and ranges of them.
+     *
+     * @param args the command line arguments
+     * @param i the index of the option
+     * @return the index of the last argument used, or -1 if args[i] is not
+     *      a filter option
+     */
+    public int parseOption(String[] args, int i) {
+        String option = args[i];
+        if (option.equals("--no-redirects")) {
+            setSkipRedirects(true);
+            return i;
+        }
+        if (i + 1 >= args.length) return -1;
+        String value = args[i + 1];
+        switch (option) {
+            case "--ns": {
+                for (String ns : value.split(",")) {
+                    addNamespace(Integer.parseInt(ns.trim()));
+                }
+                return i + 1;
+            }
+            case "--title-prefix": {
+                setTitlePrefix(value);
+                return i + 1;
+            }
+            case "--title-regex": {
+                setTitlePattern(value);
+                return i + 1;
+            }
+            case "--ids": {
+                for (String range : value.split(",")) {
+                    String[] ends = range.split("-", 2);
+                    long from = Long.parseLong(ends[0].trim());
+                    addIdRange(from, (ends.length == 1)
+                            ? from : Long.parseLong(ends[1].trim()));
+                }
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
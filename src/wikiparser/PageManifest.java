@@ -0,0 +1,227 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * What an incremental run of WikiParser wrote for each page, so the next run
+ * can tell which pages are unchanged and copy their output instead of
+ * scanning them again.
+ *
+ * The manifest is a file of fixed size records, one per page in output order:
+ * the page id, the revision id, the content hash of WikiPageSource, and the
+ * offset and length of the page element in each of the WikiOutputWriter
+ * files. The records are memory mapped, only a sorted array of page ids (each
+ * packed with its record number) is kept on the heap.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class PageManifest implements Closeable {
+
+    /** page id, revision id, hash, then an offset and length per output */
+    static final int RECORD_BYTES = 3 * 8 + WikiOutputWriter.DOC_TYPES.length * 12;
+
+    /** whole records per mapping, a mapping is limited to 2GB */
+    private static final int RECORDS_PER_MAP = Integer.MAX_VALUE / RECORD_BYTES;
+
+    private final FileChannel file;
+    private final MappedByteBuffer[] maps;  // RECORDS_PER_MAP records each
+    private final long[] pageIds;           // page id << 32 | record, sorted
+
+    /**
+     * Maps a manifest written by an earlier run.
+     *
+     * @param path the manifest file
+     * @throws IOException if the file can not be read
+     */
+    public PageManifest(Path path) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        long records = file.size() / RECORD_BYTES;
+        if (records > Integer.MAX_VALUE) {
+            file.close();
+            throw new IOException("too many records in " + path);
+        }
+        maps = new MappedByteBuffer[(int) ((records + RECORDS_PER_MAP - 1)
+                / RECORDS_PER_MAP)];
+        for (int i = 0; i < maps.length; i++) {
+            long first = (long) i * RECORDS_PER_MAP;
+            long count = Math.min(RECORDS_PER_MAP, records - first);
+            maps[i] = file.map(FileChannel.MapMode.READ_ONLY,
+                    first * RECORD_BYTES, count * RECORD_BYTES);
+        }
+        pageIds = new long[(int) records];
+        for (int record = 0; record < records; record++) {
+            pageIds[record] = (getPageId(record) << 32) | record;
+        }
+        Arrays.sort(pageIds);
+    }
+
+    /**
+     * @return the number of pages in the manifest
+     */
+    public int size() { return this.pageIds.length; }
+
+    /**
+     * @param pageId the page id
+     * @return the record of the page, or -1 if it is not in the manifest
+     */
+    public int find(long pageId) {
+        int at = Arrays.binarySearch(pageIds, pageId << 32);
+        if (at < 0) at = -at - 1;
+        if (at < pageIds.length && (pageIds[at] >>> 32) == pageId) {
+            return (int) pageIds[at];
+        }
+        return -1;
+    }
+
+    public long getPageId(int record) { return map(record).getLong(at(record)); }
+    public long getRevisionId(int record) { return map(record).getLong(at(record) + 8); }
+    public long getContentHash(int record) { return map(record).getLong(at(record) + 16); }
+
+    /**
+     * @param record the record of the page
+     * @param output the index of the output, as in WikiOutputWriter.DOC_TYPES
+     * @return the offset of the page element in that output
+     */
+    public long getOffset(int record, int output) {
+        return map(record).getLong(at(record) + 24 + output * 12);
+    }
+
+    /**
+     * @param record the record of the page
+     * @param output the index of the output, as in WikiOutputWriter.DOC_TYPES
+     * @return the length of the page element in that output
+     */
+    public int getLength(int record, int output) {
+        return map(record).getInt(at(record) + 32 + output * 12);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private ByteBuffer map(int record) {
+        return maps[record / RECORDS_PER_MAP];
+    }
+
+    private static int at(int record) {
+        return (record % RECORDS_PER_MAP) * RECORD_BYTES;
+    }
+
+    /**
+     * Page ids are only kept if they fit in 31 bits, every page id in the
+     * Wikipedias does, anything else is simply never found unchanged.
+     *
+     * @param id the page id as written in the XML
+     * @return the id, or -1 if it can not go into a manifest
+     */
+    static long parseId(String id) {
+        try {
+            long value = Long.parseLong(id.trim());
+            return (value >= 0 && value <= Integer.MAX_VALUE) ? value : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Appends the records of a run, in output order.
+     */
+    public static class Writer implements Closeable {
+
+        private final FileChannel file;
+        private final DataOutputStream out;
+
+        /**
+         * @param path the manifest file to write
+         * @param resumeRecords the number of records to keep from an
+         *      interrupted run, or -1 to start a new file
+         * @throws IOException if the file can not be opened
+         */
+        public Writer(Path path, int resumeRecords) throws IOException {
+            if (resumeRecords < 0) {
+                file = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } else {
+                file = FileChannel.open(path, StandardOpenOption.WRITE);
+                long length = (long) resumeRecords * RECORD_BYTES;
+                if (file.size() < length) {
+                    file.close();
+                    throw new IOException(path + " is shorter than its checkpoint");
+                }
+                file.truncate(length);
+                file.position(length);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(file), 1 << 16));
+        }
+
+        /**
+         * @param pageId the page id, from parseId
+         * @param revisionId the revision id, from parseId
+         * @param contentHash the content hash of the page
+         * @param offsets the offset of the page element in each output
+         * @param lengths the length of the page element in each output
+         * @throws IOException if the write fails
+         */
+        public void write(long pageId, long revisionId, long contentHash,
+                long[] offsets, int[] lengths) throws IOException {
+            out.writeLong(pageId);
+            out.writeLong(revisionId);
+            out.writeLong(contentHash);
+            for (int i = 0; i < offsets.length; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+        }
+
+        /**
+         * Pushes every record written so far down to the disk.
+         *
+         * @throws IOException if the write fails
+         */
+        public void sync() throws IOException {
+            out.flush();
+            file.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the wikitext scan of every page on a work-stealing pool, while keeping
+ * the output files in the same page order as the input.
+ *
+ * The calling thread reads page sources in order and submits each scan to the
+ * pool, the resulting futures go into a bounded FIFO which acts as the reorder
+ * buffer: a single writer thread takes them from the head, waiting on each one
+ * in turn, so pages finishing early simply wait their turn. The bound keeps
+ * at most a fixed window of pages in memory and throttles the reader when the
+ * writer falls behind.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class ParallelPageProcessor {
+
+    /** marks the end of the input in the reorder buffer */
+    private static final CompletableFuture<WikipediaPage> END_OF_PAGES
+            = CompletableFuture.completedFuture(null);
+
+    private final int threads;      // scanning threads in the pool
+    private final int window;       // most pages in flight at once
+
+    /**
+     * @param threads the number of threads scanning pages
+     */
+    public ParallelPageProcessor(int threads) {
+        this(threads, threads * 4);
+    }
+
+    /**
+     * @param threads the number of threads scanning pages
+     * @param window the most pages read but not yet written
+     */
+    public ParallelPageProcessor(int threads, int window) {
+        if (threads < 1 || window < 1) {
+            throw new IllegalArgumentException(
+                    "threads and window must be positive");
+        }
+        this.threads = threads;
+        this.window = window;
+    }
+
+    /**
+     * Reads every remaining page and writes it, in input order.
+     *
+     * @param reader the pages to process
+     * @param writer the outputs to write to
+     * @return the number of pages written
+     * @throws IOException if writing fails
+     */
+    public int process(WikiPageReader reader, WikiOutputWriter writer)
+            throws IOException {
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ExecutorService writerThread = Executors.newSingleThreadExecutor();
+        BlockingQueue<CompletableFuture<WikipediaPage>> reorderBuffer
+                = new ArrayBlockingQueue<>(window);
+        PipelineMetrics.get().registerQueue("reorder", reorderBuffer::size);
+
+        try {
+            Future<Integer> written = writerThread.submit(
+                    () -> writeInOrder(reorderBuffer, writer));
+
+            boolean writing = true;
+            while (writing && reader.hasNext()) {
+                WikiPageSource source = reader.nextSource();
+                WikipediaPage unchanged = writer.findUnchanged(source);
+                writing = enqueue(reorderBuffer, written, (unchanged != null)
+                        ? CompletableFuture.completedFuture(unchanged)
+                        : CompletableFuture.supplyAsync(source::parse, pool));
+            }
+            if (writing) enqueue(reorderBuffer, written, END_OF_PAGES);
+
+            return written.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing pages", ex);
+        } catch (ExecutionException ex) {
+            throw rethrow(ex.getCause());
+        } finally {
+            PipelineMetrics.get().unregisterQueue("reorder");
+            writerThread.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes scanned pages off the head of the buffer and writes them.
+     *
+     * @return the number of pages written
+     */
+    private static int writeInOrder(
+            BlockingQueue<CompletableFuture<WikipediaPage>> reorderBuffer,
+            WikiOutputWriter writer) throws IOException, InterruptedException {
+        int count = 0;
+        CompletableFuture<WikipediaPage> next;
+        while ((next = reorderBuffer.take()) != END_OF_PAGES) {
+            writer.writePage(next.join());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Blocks until there is room in the buffer, giving up if the writer has
+     * stopped (which can only mean it failed).
+     *
+     * @return false if the writer has stopped
+     */
+    private static boolean enqueue(
+            BlockingQueue<CompletableFuture<WikipediaPage>> reorderBuffer,
+            Future<Integer> written, CompletableFuture<WikipediaPage> page)
+            throws InterruptedException {
+        while (!reorderBuffer.offer(page, 100, TimeUnit.MILLISECONDS)) {
+            if (written.isDone()) return false;
+        }
+        return true;
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        // unwrap the CompletionException of a failed scan
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) return (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return new IOException(cause.getMessage(), cause);
+    }
+}
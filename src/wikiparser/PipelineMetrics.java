@@ -0,0 +1,423 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what every stage of the pipeline does, for watching a long run.
+ *
+ * The stages (read, parse, extract, tag and write) each record how long they
+ * took on every page into a histogram, the pages, input bytes and tokens are
+ * counted, the queues between stages register their depth, and the slowest
+ * pages are kept by title, which is how pathological pages are found. All of
+ * it is shown through JMX as a PipelineMetricsMXBean, and printed as one
+ * line of progress every so often.
+ *
+ * There is one instance per JVM, recording costs a System.nanoTime and a few
+ * atomic adds.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+
+    /** the name the metrics are registered under */
+    public static final String OBJECT_NAME = "wikiparser:type=PipelineMetrics";
+
+    /** the stages of the pipeline, and whole requests to a ParseServer */
+    public enum Stage { READ, PARSE, EXTRACT, TAG, WRITE, REQUEST }
+
+    /** the number of slowest pages kept */
+    private static final int SLOWEST = 10;
+
+    private static PipelineMetrics instance;
+
+    private final LongAdder pages = new LongAdder();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder tokens = new LongAdder();
+    private volatile long inputSize = -1;
+    private volatile long pageTotal = -1;
+    private volatile long started = System.nanoTime();
+    private volatile long startBytes, startPages;
+
+    private final Histogram[] latencies = new Histogram[Stage.values().length];
+    private final Map<String, IntSupplier> queues = new ConcurrentHashMap<>();
+    private final PriorityQueue<SlowPage> slowest = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.nanos, b.nanos));
+    private volatile long slowThreshold;    // the fastest of the slowest, once full
+
+    private PipelineMetrics() {
+        for (int i = 0; i < latencies.length; i++) latencies[i] = new Histogram();
+    }
+
+    /**
+     * @return the metrics of this JVM, registered with JMX on first use
+     */
+    public static synchronized PipelineMetrics get() {
+        if (instance == null) {
+            instance = new PipelineMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        instance, new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException ex) {
+                System.err.println("WARNING: metrics not shown through JMX: "
+                        + ex.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param stage the stage that ran
+     * @param title the page it ran on, or null if it is not known
+     * @param nanos how long it took
+     */
+    public void record(Stage stage, String title, long nanos) {
+        latencies[stage.ordinal()].add(nanos);
+        if (nanos > slowThreshold && title != null) {
+            synchronized (slowest) {
+                slowest.add(new SlowPage(title, stage, nanos));
+                if (slowest.size() > SLOWEST) slowest.poll();
+                if (slowest.size() == SLOWEST) slowThreshold = slowest.peek().nanos;
+            }
+        }
+    }
+
+    /**
+     * Records a stage that started at the given time and ends now.
+     *
+     * @param stage the stage that ran
+     * @param title the page it ran on, or null if it is not known
+     * @param startNanos the System.nanoTime when it started
+     */
+    public void recordSince(Stage stage, String title, long startNanos) {
+        record(stage, title, System.nanoTime() - startNanos);
+    }
+
+    public void addPages(long count) { pages.add(count); }
+    public void addTokens(long count) { tokens.add(count); }
+
+    /**
+     * @param offset how far into the input the pipeline has read, it only
+     *      ever moves forward
+     */
+    public void setInputPosition(long offset) {
+        long seen;
+        while (offset > (seen = bytes.get()) && !bytes.compareAndSet(seen, offset)) { }
+    }
+
+    /**
+     * @param size the bytes of input in all, or -1 if not known
+     */
+    public void setInputSize(long size) { this.inputSize = size; }
+
+    /**
+     * @param total the pages the run will finish, or -1 if not known
+     */
+    public void setPageTotal(long total) { this.pageTotal = total; }
+
+    /**
+     * @param name the name to show the queue by
+     * @param depth gives the number of items in the queue
+     */
+    public void registerQueue(String name, IntSupplier depth) {
+        queues.put(name, depth);
+    }
+
+    /**
+     * @param name the name the queue was registered by
+     */
+    public void unregisterQueue(String name) {
+        queues.remove(name);
+    }
+
+    /**
+     * Prints a line of progress every so often, until closed.
+     *
+     * @param seconds the seconds between two lines, 0 for none
+     * @return stops the printing, and prints a last line for the time since
+     *         the one before
+     */
+    public Closeable startProgressLog(int seconds) {
+        if (seconds <= 0) return () -> { };
+        startBytes = bytes.get();
+        startPages = pages.sum();
+        started = System.nanoTime();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "progress-log");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] last = { System.nanoTime(), pages.sum(), bytes.get() };
+        timer.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime(), p = pages.sum(), b = bytes.get();
+            System.out.println(progressLine(now - last[0], p - last[1], b - last[2]));
+            last[0] = now;
+            last[1] = p;
+            last[2] = b;
+        }, seconds, seconds, TimeUnit.SECONDS);
+        return () -> {
+            timer.shutdownNow();
+            try {
+                // let a line being printed finish, so the last one comes last
+                timer.awaitTermination(seconds, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            long now = System.nanoTime();
+            System.out.println(progressLine(now - last[0],
+                    pages.sum() - last[1], bytes.get() - last[2]));
+        };
+    }
+
+    /**
+     * One line of progress, ie. "Progress: 12000 pages, 310.2 of 1024.0 MB
+     * (30%), 2400 pages/s, 62.0 MB/s, ETA 0:03:10, 0 tokens, queues: reorder=16"
+     */
+    private String progressLine(long nanos, long newPages, long newBytes) {
+        double seconds = Math.max(1e-9, nanos / 1e9);
+        StringBuilder line = new StringBuilder("Progress: ").append(pages.sum())
+                .append(" pages, ").append(String.format("%.1f", bytes.get() / 1048576.0));
+        if (inputSize > 0) {
+            line.append(String.format(" of %.1f MB (%d%%)", inputSize / 1048576.0,
+                    100 * bytes.get() / inputSize));
+        } else {
+            line.append(" MB");
+        }
+        line.append(String.format(", %.0f pages/s, %.1f MB/s", newPages / seconds,
+                newBytes / 1048576.0 / seconds));
+        long eta = getEtaSeconds();
+        line.append(", ETA ").append(eta < 0 ? "unknown" : String.format("%d:%02d:%02d",
+                eta / 3600, eta / 60 % 60, eta % 60));
+        if (tokens.sum() > 0) line.append(", ").append(tokens.sum()).append(" tokens");
+        Map<String, Integer> depths = getQueueDepths();
+        if (!depths.isEmpty()) {
+            line.append(", queues:");
+            for (Map.Entry<String, Integer> queue : depths.entrySet()) {
+                line.append(' ').append(queue.getKey()).append('=').append(queue.getValue());
+            }
+        }
+        return line.toString();
+    }
+
+    @Override
+    public long getPageCount() { return pages.sum(); }
+
+    @Override
+    public long getByteCount() { return bytes.get(); }
+
+    @Override
+    public long getTokenCount() { return tokens.sum(); }
+
+    @Override
+    public long getInputSize() { return inputSize; }
+
+    @Override
+    public double getPagesPerSecond() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return seconds <= 0 ? 0 : (pages.sum() - startPages) / seconds;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        double done, left;
+        if (inputSize > 0) {
+            done = bytes.get() - startBytes;
+            left = inputSize - bytes.get();
+        } else if (pageTotal > 0) {
+            done = pages.sum() - startPages;
+            left = pageTotal - pages.sum();
+        } else {
+            return -1;
+        }
+        if (done <= 0) return -1;
+        return (long) Math.max(0, left * seconds / done);
+    }
+
+    @Override
+    public List<StageStats> getStageLatencies() {
+        List<StageStats> stats = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = latencies[stage.ordinal()];
+            if (histogram.count.sum() > 0) stats.add(new StageStats(stage, histogram));
+        }
+        return stats;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        for (Map.Entry<String, IntSupplier> queue : queues.entrySet()) {
+            depths.put(queue.getKey(), queue.getValue().getAsInt());
+        }
+        return depths;
+    }
+
+    @Override
+    public List<SlowPage> getSlowestPages() {
+        List<SlowPage> pages;
+        synchronized (slowest) {
+            pages = new ArrayList<>(slowest);
+        }
+        pages.sort(Collections.reverseOrder((a, b) -> Long.compare(a.nanos, b.nanos)));
+        return pages;
+    }
+
+    @Override
+    public void reset() {
+        pages.reset();
+        bytes.set(0);
+        tokens.reset();
+        inputSize = pageTotal = -1;
+        startBytes = startPages = 0;
+        started = System.nanoTime();
+        for (Histogram histogram : latencies) histogram.reset();
+        synchronized (slowest) {
+            slowest.clear();
+            slowThreshold = 0;
+        }
+    }
+
+    /**
+     * @return a summary of every stage, one per line, for the end of a run
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (StageStats stats : getStageLatencies()) {
+            report.append(String.format("%-8s %8d times, mean %8.0f us, p50 %8d us,"
+                    + " p99 %8d us, max %8d us%n", stats.getStage(), stats.getCount(),
+                    stats.getMeanMicros(), stats.getP50Micros(), stats.getP99Micros(),
+                    stats.getMaxMicros()));
+        }
+        for (SlowPage page : getSlowestPages()) {
+            report.append(String.format("slow     %8d us %-8s %s%n",
+                    page.getMicros(), page.getStage(), page.getTitle()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * A histogram of latencies in power of two buckets of nanoseconds, so a
+     * percentile is known to within a factor of two.
+     */
+    private static final class Histogram {
+
+        final AtomicLongArray buckets = new AtomicLongArray(64);
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final AtomicLong max = new AtomicLong();
+
+        void add(long nanos) {
+            nanos = Math.max(1, nanos);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            total.add(nanos);
+            long seen;
+            while (nanos > (seen = max.get()) && !max.compareAndSet(seen, nanos)) { }
+        }
+
+        /** the upper bound of the bucket holding the quantile */
+        long percentile(double quantile) {
+            long wanted = (long) Math.ceil(count.sum() * quantile), seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= wanted && seen > 0) return Math.min(max.get(), (2L << i) - 1);
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < 64; i++) buckets.set(i, 0);
+            count.reset();
+            total.reset();
+            max.set(0);
+        }
+    }
+
+    /**
+     * The latencies of one stage, in microseconds.
+     */
+    public static final class StageStats {
+
+        private final String stage;
+        private final long count, p50, p90, p99, max;
+        private final double mean;
+
+        StageStats(Stage stage, Histogram histogram) {
+            this.stage = stage.name();
+            this.count = histogram.count.sum();
+            this.mean = count == 0 ? 0 : histogram.total.sum() / 1000.0 / count;
+            this.p50 = histogram.percentile(0.50) / 1000;
+            this.p90 = histogram.percentile(0.90) / 1000;
+            this.p99 = histogram.percentile(0.99) / 1000;
+            this.max = histogram.max.get() / 1000;
+        }
+
+        public String getStage() { return stage; }
+        public long getCount() { return count; }
+        public double getMeanMicros() { return mean; }
+        public long getP50Micros() { return p50; }
+        public long getP90Micros() { return p90; }
+        public long getP99Micros() { return p99; }
+        public long getMaxMicros() { return max; }
+    }
+
+    /**
+     * One of the slowest pages, and the stage it was slow in.
+     */
+    public static final class SlowPage {
+
+        private final String title;
+        private final Stage stage;
+        private final long nanos;
+
+        SlowPage(String title, Stage stage, long nanos) {
+            this.title = title;
+            this.stage = stage;
+            this.nanos = nanos;
+        }
+
+        public String getTitle() { return title; }
+        public String getStage() { return stage.name(); }
+        public long getMicros() { return nanos / 1000; }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What PipelineMetrics shows through JMX, under "wikiparser:type=PipelineMetrics".
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public interface PipelineMetricsMXBean {
+
+    /** @return the pages finished so far */
+    long getPageCount();
+
+    /** @return the bytes of input read so far */
+    long getByteCount();
+
+    /** @return the tokens tagged so far */
+    long getTokenCount();
+
+    /** @return the bytes of input in all, or -1 if not known */
+    long getInputSize();
+
+    /** @return the pages finished per second, since the run started */
+    double getPagesPerSecond();
+
+    /** @return the seconds the run should still take, or -1 if not known */
+    long getEtaSeconds();
+
+    /** @return the latency of each stage that has run */
+    List<PipelineMetrics.StageStats> getStageLatencies();
+
+    /** @return the number of items in each registered queue */
+    Map<String, Integer> getQueueDepths();
+
+    /** @return the slowest pages seen in any stage, slowest first */
+    List<PipelineMetrics.SlowPage> getSlowestPages();
+
+    /** Forgets everything counted, ie. before another run. */
+    void reset();
+}
@@ -0,0 +1,172 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * How far a run of WikiParser has got, saved next to the output files so an
+ * interrupted run can be resumed instead of started over.
+ *
+ * A checkpoint is only taken right after a page was written and synced to
+ * every output, so it names the input offset just past that page, its id,
+ * and the length of each output file at that moment. Resuming cuts the
+ * outputs back to those lengths and seeks the input to the offset, so no page
+ * is lost, read twice, or written twice.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class WikiCheckpoint {
+
+    /** the checkpoint file, inside of the output directory */
+    public static final String FILE_NAME = "parseCheckpoint.properties";
+
+    private final String inputFN;           // absolute path of the input
+    private final long inputLength;         // size of the input file
+    private final long inputOffset;         // uncompressed offset after page
+    private final int pages;                // pages written up to here
+    private final String lastPageId;        // id of the last page written
+    private final long[] outputLengths;     // one per WikiOutputWriter.DOC_TYPES
+    private final boolean complete;         // the run finished
+
+    /**
+     * @param xmlFN the input path/file name
+     * @param inputOffset the uncompressed input offset after the last page
+     * @param pages the number of pages written
+     * @param lastPageId the id of the last page written
+     * @param outputLengths the synced length of each output file
+     * @param complete true if the run finished
+     */
+    public WikiCheckpoint(String xmlFN, long inputOffset, int pages,
+            String lastPageId, long[] outputLengths, boolean complete) {
+        File input = new File(xmlFN);
+        this.inputFN = input.getAbsolutePath();
+        this.inputLength = input.length();
+        this.inputOffset = inputOffset;
+        this.pages = pages;
+        this.lastPageId = lastPageId;
+        this.outputLengths = outputLengths.clone();
+        this.complete = complete;
+    }
+
+    private WikiCheckpoint(Properties saved) throws IOException {
+        try {
+            this.inputFN = required(saved, "input");
+            this.inputLength = Long.parseLong(required(saved, "inputLength"));
+            this.inputOffset = Long.parseLong(required(saved, "inputOffset"));
+            this.pages = Integer.parseInt(required(saved, "pages"));
+            this.lastPageId = saved.getProperty("lastPageId", "");
+            this.complete = Boolean.parseBoolean(required(saved, "complete"));
+            this.outputLengths = new long[WikiOutputWriter.DOC_TYPES.length];
+            for (int i = 0; i < outputLengths.length; i++) {
+                outputLengths[i] = Long.parseLong(required(saved, "output."
+                        + WikiOutputWriter.getFileName(WikiOutputWriter.DOC_TYPES[i])));
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("malformed checkpoint: " + ex.getMessage());
+        }
+    }
+
+    public long getInputOffset() { return this.inputOffset; }
+    public int getPages() { return this.pages; }
+    public String getLastPageId() { return this.lastPageId; }
+    public long[] getOutputLengths() { return this.outputLengths.clone(); }
+    public boolean isComplete() { return this.complete; }
+
+    /**
+     * @param xmlFN the input path/file name
+     * @return true if the checkpoint was taken while reading that same file
+     */
+    public boolean isFor(String xmlFN) {
+        File input = new File(xmlFN);
+        return input.getAbsolutePath().equals(inputFN)
+                && input.length() == inputLength;
+    }
+
+    /**
+     * @param outputDir the directory holding the output files
+     * @return the saved checkpoint, or null if there is none
+     * @throws IOException if the checkpoint can not be read
+     */
+    public static WikiCheckpoint load(String outputDir) throws IOException {
+        Path path = Paths.get(outputDir, FILE_NAME);
+        if (!Files.exists(path)) return null;
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            saved.load(in);
+        }
+        return new WikiCheckpoint(saved);
+    }
+
+    /**
+     * Replaces the saved checkpoint, the new file is written aside and then
+     * moved over the old one, so a crash never leaves half a checkpoint.
+     *
+     * @param outputDir the directory holding the output files
+     * @throws IOException if the checkpoint can not be written
+     */
+    public void save(String outputDir) throws IOException {
+
+        Properties saved = new Properties();
+        saved.setProperty("input", inputFN);
+        saved.setProperty("inputLength", Long.toString(inputLength));
+        saved.setProperty("inputOffset", Long.toString(inputOffset));
+        saved.setProperty("pages", Integer.toString(pages));
+        saved.setProperty("lastPageId", lastPageId);
+        saved.setProperty("complete", Boolean.toString(complete));
+        for (int i = 0; i < outputLengths.length; i++) {
+            saved.setProperty("output."
+                    + WikiOutputWriter.getFileName(WikiOutputWriter.DOC_TYPES[i]),
+                    Long.toString(outputLengths[i]));
+        }
+
+        Path path = Paths.get(outputDir, FILE_NAME);
+        Path temp = Paths.get(outputDir, FILE_NAME + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            saved.store(out, "WikiParser checkpoint");
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String required(Properties saved, String key)
+            throws IOException {
+        String value = saved.getProperty(key);
+        if (value == null) throw new IOException("checkpoint has no " + key);
+        return value;
+    }
+}
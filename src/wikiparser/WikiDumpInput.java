@@ -0,0 +1,92 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens an export or dump for reading, decompressing it on the fly when it is
+ * gzip or bzip2 compressed, so dumps never have to be unpacked to disk first.
+ *
+ * The format is told by the first bytes of the file rather than its name.
+ * Multistream bzip2 dumps are decompressed on several threads when asked to.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public final class WikiDumpInput {
+
+    private WikiDumpInput() { }
+
+    /**
+     * @param fn the XML file
+     * @return true if the file is gzip or bzip2 compressed
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isCompressed(String fn) throws IOException {
+        try (InputStream file = new FileInputStream(fn)) {
+            int b0 = file.read(), b1 = file.read(), b2 = file.read();
+            return (b0 == 0x1F && b1 == 0x8B)
+                    || (b0 == 'B' && b1 == 'Z' && b2 == 'h');
+        }
+    }
+
+    /**
+     * @param fn the plain, .gz, or .bz2 XML file
+     * @param threads the number of bzip2 streams to decompress at once
+     * @return the uncompressed XML bytes
+     * @throws IOException if the file can not be opened
+     */
+    public static InputStream open(String fn, int threads) throws IOException {
+
+        BufferedInputStream file
+                = new BufferedInputStream(new FileInputStream(fn), 1 << 16);
+
+        try {
+            file.mark(3);
+            int b0 = file.read(), b1 = file.read(), b2 = file.read();
+            file.reset();
+
+            if (b0 == 0x1F && b1 == 0x8B) {
+                return new GZIPInputStream(file, 1 << 16);
+            }
+            if (b0 == 'B' && b1 == 'Z' && b2 == 'h') {
+                if (threads > 1 && MultistreamBZip2InputStream.isMultistream(fn)) {
+                    file.close();
+                    return new BufferedInputStream(
+                            new MultistreamBZip2InputStream(fn, threads), 1 << 16);
+                }
+                return new BufferedInputStream(new BZip2InputStream(file), 1 << 16);
+            }
+            return file;
+
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single writer stage behind WikiParser: each page is handed over once
+ * and appended to the article, category, citation, anchor, and text outputs
+ * at the same time, so only the current page is ever held in memory.
+ *
+ * An incremental writer also keeps a PageManifest of the run. The next
+ * incremental run sets the files of this one aside, and every page whose
+ * revision and content are unchanged is copied from them rather than scanned
+ * and written again. Pages no longer in the input are simply left out.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class WikiOutputWriter implements Closeable {
+
+    /** the document types, in the order the files are written and reported */
+    public static final int[] DOC_TYPES = { -1, 1, 2, 3, 4 };
+
+    /** the manifest of an incremental run, inside of the output directory */
+    public static final String MANIFEST_FILE_NAME = "pageManifest.bin";
+
+    private static final String PARTIAL = ".part";      // manifest being written
+    private static final String PREVIOUS = ".previous"; // files set aside
+
+    private final String outputDir;         // where the files are written
+    private final WikiXMLWriter[] writers;  // one per entry of DOC_TYPES
+
+    private String inputFN;                 // checkpointed input, or null
+    private long checkpointInterval;        // nanoseconds between checkpoints
+    private long lastCheckpoint;            // System.nanoTime of the last one
+    private int pages;                      // pages written, in all runs
+    private String lastPageId = "";         // id of the last page written
+    private long lastEndOffset;             // input offset after that page
+    private boolean complete;               // every page has been written
+
+    private PageManifest previous;          // the last incremental run, or null
+    private FileChannel[] previousFiles;    // its outputs, set aside
+    private PageManifest.Writer manifest;   // this run's, if incremental
+    private int unchanged, changed, added;  // pages read, by how they compare
+    private final WikiCheckpoint resumedFrom;  // or null for a new run
+
+    /**
+     * Creates (or truncates) all five output files inside the directory.
+     *
+     * @param outputDir the directory to write into, ie. "xmlOutput"
+     * @throws IOException if any of the files can not be created
+     */
+    public WikiOutputWriter(String outputDir) throws IOException {
+        this(outputDir, null);
+    }
+
+    /**
+     * Continues the five output files of an interrupted run, each is cut back
+     * to its length at the checkpoint.
+     *
+     * @param outputDir the directory to write into, ie. "xmlOutput"
+     * @param resumeFrom the checkpoint to continue from, or null to create
+     *      new files
+     * @throws IOException if any of the files can not be opened
+     */
+    public WikiOutputWriter(String outputDir, WikiCheckpoint resumeFrom)
+            throws IOException {
+        this(outputDir, resumeFrom, false);
+    }
+
+    /**
+     * Opens the five output files as above, and when incremental compares
+     * the pages against the previous incremental run in the directory.
+     *
+     * @param outputDir the directory to write into, ie. "xmlOutput"
+     * @param resumeFrom the checkpoint to continue from, or null to create
+     *      new files
+     * @param incremental true to reuse the output of unchanged pages, and to
+     *      keep a manifest for the next run
+     * @throws IOException if any of the files can not be opened
+     */
+    public WikiOutputWriter(String outputDir, WikiCheckpoint resumeFrom,
+            boolean incremental) throws IOException {
+        this.outputDir = outputDir;
+        this.resumedFrom = resumeFrom;
+        writers = new WikiXMLWriter[DOC_TYPES.length];
+        if (resumeFrom != null) {
+            pages = resumeFrom.getPages();
+            lastPageId = resumeFrom.getLastPageId();
+            lastEndOffset = resumeFrom.getInputOffset();
+        }
+        try {
+            if (incremental) {
+                // an interrupted run has already set the last one aside
+                if (resumeFrom == null) setPreviousRunAside();
+                openPreviousRun();
+                manifest = new PageManifest.Writer(
+                        path(MANIFEST_FILE_NAME + PARTIAL),
+                        resumeFrom == null ? -1 : pages);
+            }
+            for (int i = 0; i < DOC_TYPES.length; i++) {
+                String fn = outputDir + "/" + getFileName(DOC_TYPES[i]);
+                long resumeLength = (resumeFrom == null)
+                        ? -1 : resumeFrom.getOutputLengths()[i];
+                writers[i] = new WikiXMLWriter(fn, DOC_TYPES[i], resumeLength);
+            }
+        } catch (IOException ex) {
+            for (WikiXMLWriter writer : writers) {
+                if (writer != null) writer.close();
+            }
+            closePreviousRun(false);
+            throw ex;
+        }
+    }
+
+    /**
+     *
+     * @param docType - the type of document, as in WikiXMLWriter
+     * @return the file name used for that type of document
+     */
+    public static String getFileName(int docType) {
+        switch (docType) {
+            case 1: return "pageCategoryDocument.xml";
+            case 2: return "pageCitationDocument.xml";
+            case 3: return "pageAnchorDocument.xml";
+            case 4: return "pageTextDocument.xml";
+            default: return "articleOuput.xml";
+        }
+    }
+
+    /**
+     * Appends the page to every output.
+     *
+     * @param wiki the page to write
+     * @throws IOException if any write fails
+     */
+    public void writePage(WikipediaPage wiki) throws IOException {
+
+        long started = System.nanoTime();
+        long[] offsets = new long[writers.length];
+        int[] lengths = new int[writers.length];
+
+        for (int i = 0; i < writers.length; i++) {
+            if (wiki.previousRecord >= 0) {
+                lengths[i] = previous.getLength(wiki.previousRecord, i);
+                writers[i].copyPage(previousFiles[i],
+                        previous.getOffset(wiki.previousRecord, i), lengths[i]);
+            } else {
+                lengths[i] = (int) writers[i].writePage(wiki);
+            }
+            offsets[i] = writers[i].position() - lengths[i];
+        }
+
+        if (manifest != null) {
+            WikiPageSource source = wiki.source;
+            manifest.write(PageManifest.parseId(wiki.revNumber),
+                    source == null ? -1 : PageManifest.parseId(source.getRevisionId()),
+                    source == null ? 0 : source.getContentHash(),
+                    offsets, lengths);
+        }
+
+        pages++;
+        lastPageId = wiki.revNumber;
+        lastEndOffset = (wiki.source == null) ? -1 : wiki.source.getEndOffset();
+        PipelineMetrics metrics = PipelineMetrics.get();
+        metrics.recordSince(PipelineMetrics.Stage.WRITE, wiki.pageTitle, started);
+        metrics.addPages(1);
+        metrics.setInputPosition(lastEndOffset);
+        if (inputFN != null && lastEndOffset >= 0
+                && System.nanoTime() - lastCheckpoint >= checkpointInterval) {
+            checkpoint(false);
+        }
+    }
+
+    /**
+     * Checks the page against the previous incremental run, before its
+     * wikitext is scanned.
+     *
+     * @param source the page as read
+     * @return a page to write in place of scanning the source, when it is
+     *      unchanged since the previous run, otherwise null
+     */
+    public WikipediaPage findUnchanged(WikiPageSource source) {
+        if (manifest == null) return null;
+        long pageId = PageManifest.parseId(source.getRevision());
+        int record = (previous == null || pageId < 0) ? -1 : previous.find(pageId);
+        if (record < 0) {
+            added++;
+            return null;
+        }
+        if (previous.getRevisionId(record)
+                == PageManifest.parseId(source.getRevisionId())
+                && previous.getContentHash(record) == source.getContentHash()) {
+            unchanged++;
+            return new WikipediaPage(source, record);
+        }
+        changed++;
+        return null;
+    }
+
+    /**
+     * Saves a WikiCheckpoint into the output directory every so often, after
+     * the page being written, and a final one once the files are closed
+     * after setComplete.
+     *
+     * @param xmlFN the input the pages are read from
+     * @param seconds the least time between two checkpoints
+     */
+    public void checkpointEvery(String xmlFN, int seconds) {
+        this.inputFN = xmlFN;
+        this.checkpointInterval = TimeUnit.SECONDS.toNanos(seconds);
+        this.lastCheckpoint = System.nanoTime();
+    }
+
+    /**
+     * Marks the input as fully written, so closing saves a final checkpoint
+     * saying so. Otherwise the last periodic checkpoint is kept for a resume.
+     */
+    public void setComplete() { this.complete = true; }
+
+    /**
+     * @return the number of pages written, counting those before a resume
+     */
+    public int getPageCount() { return this.pages; }
+
+    private void checkpoint(boolean complete) throws IOException {
+        long[] lengths = new long[writers.length];
+        for (int i = 0; i < writers.length; i++) {
+            lengths[i] = complete
+                    ? writers[i].getFile().length() : writers[i].sync();
+        }
+        if (manifest != null && !complete) manifest.sync();
+        new WikiCheckpoint(inputFN, lastEndOffset, pages, lastPageId,
+                lengths, complete).save(outputDir);
+        lastCheckpoint = System.nanoTime();
+    }
+
+    /**
+     * Finishes every document, reporting each file saved.
+     *
+     * @throws IOException the first failure, after all files were attempted
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (WikiXMLWriter writer : writers) {
+            if (writer == null) continue;
+            try {
+                writer.close();
+                System.out.println("XML File Saved: "
+                        + writer.getFile().getAbsolutePath());
+            } catch (IOException ex) {
+                if (failure == null) failure = ex;
+            }
+        }
+        try {
+            if (manifest != null) manifest.close();
+        } catch (IOException ex) {
+            if (failure == null) failure = ex;
+        }
+        closePreviousRun(complete && failure == null);
+        if (failure != null) throw failure;
+
+        if (manifest != null && complete) {
+            Files.move(path(MANIFEST_FILE_NAME + PARTIAL),
+                    path(MANIFEST_FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+            // after a resume the counts only cover the pages since then
+            String deleted = (resumedFrom != null) ? ""
+                    : ", deleted: " + (previous == null
+                            ? 0 : previous.size() - unchanged - changed);
+            System.out.println("Pages unchanged: " + unchanged + ", changed: "
+                    + changed + ", new: " + added + deleted);
+        }
+        if (inputFN != null && complete) checkpoint(true);
+    }
+
+    /**
+     * Renames the outputs and manifest of the last incremental run, if there
+     * was one, so they can be read while the new ones are written.
+     */
+    private void setPreviousRunAside() throws IOException {
+        if (!Files.exists(path(MANIFEST_FILE_NAME))) return;
+        for (int docType : DOC_TYPES) {
+            Files.move(path(getFileName(docType)),
+                    path(getFileName(docType) + PREVIOUS),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(path(MANIFEST_FILE_NAME), path(MANIFEST_FILE_NAME + PREVIOUS),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void openPreviousRun() throws IOException {
+        if (!Files.exists(path(MANIFEST_FILE_NAME + PREVIOUS))) return;
+        previous = new PageManifest(path(MANIFEST_FILE_NAME + PREVIOUS));
+        previousFiles = new FileChannel[DOC_TYPES.length];
+        for (int i = 0; i < DOC_TYPES.length; i++) {
+            previousFiles[i] = FileChannel.open(
+                    path(getFileName(DOC_TYPES[i]) + PREVIOUS),
+                    StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Closes the files of the previous run, deleting them once the new run is
+     * complete, they are kept for a resume otherwise.
+     */
+    private void closePreviousRun(boolean delete) throws IOException {
+        if (previous == null) return;
+        previous.close();
+        for (FileChannel file : previousFiles) {
+            if (file != null) file.close();
+        }
+        if (delete) {
+            for (int docType : DOC_TYPES) {
+                Files.delete(path(getFileName(docType) + PREVIOUS));
+            }
+            Files.delete(path(MANIFEST_FILE_NAME + PREVIOUS));
+        }
+    }
+
+    private Path path(String fileName) {
+        return Paths.get(outputDir, fileName);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Fetches specific pages out of a multistream dump without scanning it.
+ *
+ * The index names the bzip2 stream each title is in, so only those streams are
+ * seeked to and decompressed, about a hundred pages each, and only the pages
+ * with a wanted title are scanned into WikipediaPages.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class WikiPageLookup {
+
+    private final String dumpFN;            // the multistream .xml.bz2
+    private final MultistreamIndex index;   // its loaded index
+
+    /**
+     * @param dumpFN the multistream dump path/file name
+     * @param index the loaded index of that dump
+     */
+    public WikiPageLookup(String dumpFN, MultistreamIndex index) {
+        this.dumpFN = dumpFN;
+        this.index = index;
+    }
+
+    /**
+     * Finds the pages with the given titles, titles that are not in the dump
+     * are left out of the result.
+     *
+     * @param titles the titles wanted
+     * @return the matching pages, in dump order
+     * @throws IOException if the dump can not be read
+     */
+    public ArrayList<WikipediaPage> findPages(Collection<String> titles)
+            throws IOException {
+
+        // group the titles by stream, so each stream is only read once
+        Map<Long, Set<String>> byStream = new TreeMap<>();
+        for (String title : titles) {
+            for (long offset : index.findStreamOffsets(title)) {
+                byStream.computeIfAbsent(offset, k -> new HashSet<>()).add(title);
+            }
+        }
+
+        ArrayList<WikipediaPage> found = new ArrayList<>();
+
+        try (RandomAccessFile dump = new RandomAccessFile(dumpFN, "r")) {
+            for (Map.Entry<Long, Set<String>> stream : byStream.entrySet()) {
+                dump.seek(stream.getKey());
+                readStream(dump, stream.getValue(), found);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Decompresses the one stream at the file pointer, and keeps the pages
+     * in it that have one of the titles.
+     */
+    private void readStream(RandomAccessFile dump, Set<String> titles,
+            ArrayList<WikipediaPage> found) throws IOException {
+
+        // the dump stays open for the next stream, whatever gets closed here
+        InputStream compressed = new FilterInputStream(
+                Channels.newInputStream(dump.getChannel())) {
+            @Override
+            public void close() { }
+        };
+
+        // a stream holds bare page elements, so give them a root element
+        InputStream pages = new BZip2InputStream(compressed, false);
+        InputStream document = new SequenceInputStream(
+                new SequenceInputStream(bytes("<mediawiki>"), pages),
+                bytes("</mediawiki>"));
+
+        try {
+            WikiPageReader reader = new WikiPageReader(document);
+            while (reader.hasNext()) {
+                WikiPageSource source = reader.nextSource();
+                if (titles.contains(source.getTitle())) {
+                    found.add(source.parse());
+                }
+            }
+        } catch (IllegalStateException ex) {
+            throw new IOException("bad stream at " + dump.getFilePointer()
+                    + " of " + dumpFN + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static InputStream bytes(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
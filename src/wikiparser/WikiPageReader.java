@@ -0,0 +1,583 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A pull based reader for Wikipedia Special Export XML files.
+ *
+ * Unlike the DOM, which must hold the entire export in memory, the reader
+ * walks the file one page element at a time, so memory use stays constant no
+ * matter how large the export (or dump) is.
+ *
+ * Each page element is first cut out of the byte stream by its start and end
+ * tags, and only then parsed with StAX. This keeps the exact input offset of
+ * every page, so a run can be resumed from the middle of a dump, and means a
+ * malformed page is skipped (and logged) without losing the rest of the file.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class WikiPageReader implements Iterator<WikipediaPage>, Closeable {
+
+    private static final byte[] PAGE_START
+            = "<page>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAGE_END
+            = "</page>".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream input;        // the underlying XML byte stream
+    private final XMLInputFactory factory;  // parses each cut out page
+    private XMLInputFactory pieceFactory;   // gives the text in pieces
+    private final byte[] buffer = new byte[1 << 16];
+    private int position, limit;            // unread bytes of buffer
+    private long bufferOffset;              // input offset of buffer[0]
+
+    private byte[] page = new byte[1 << 16]; // the page being cut out
+    private int pageLength;                 // bytes of it held in page
+    private long pageOffset;                // input offset of its start tag
+
+    private WikiPageSource nextPage;        // the page read ahead by hasNext
+    private boolean finished;               // true once the input is spent
+    private int skipped;                    // malformed pages left out
+    private Set<WikipediaPage.Field> projection; // of lazy pages, or null
+    PageFilter filter;                      // the pages taken, or null for all
+    private int filtered;                   // pages the filter left out
+
+    /**
+     * Opens the XML file for streaming, the caller must close the reader.
+     * The file may be gzip or bzip2 compressed.
+     *
+     * @param xmlFN: the XML path/file name
+     * @throws IOException if the file can not be opened
+     */
+    public WikiPageReader(String xmlFN) throws IOException {
+        this(xmlFN, 1);
+    }
+
+    /**
+     * Opens the XML file for streaming, the caller must close the reader.
+     * The file may be gzip or bzip2 compressed, a multistream bzip2 dump is
+     * decompressed on the given number of threads.
+     *
+     * @param xmlFN: the XML path/file name
+     * @param threads: the number of bzip2 streams to decompress at once
+     * @throws IOException if the file can not be opened
+     */
+    public WikiPageReader(String xmlFN, int threads) throws IOException {
+        this(WikiDumpInput.open(xmlFN, threads));
+    }
+
+    /**
+     * Streams pages from an already opened input, which is closed along with
+     * the reader.
+     *
+     * @param in: the XML byte stream
+     */
+    public WikiPageReader(InputStream in) {
+        this.input = in;
+        this.factory = newInputFactory();
+    }
+
+    /**
+     * For readers that find the pages some other way, they must override
+     * hasNext, nextSource, skipTo, getSkippedCount, getFilteredCount, and
+     * close, and check the filter.
+     */
+    protected WikiPageReader() {
+        this.input = null;
+        this.factory = null;
+    }
+
+    /**
+     * Opens the XML file the fastest way there is for it: an uncompressed
+     * file is memory mapped and read on several threads when given more
+     * than one, anything else is streamed as by the constructor.
+     *
+     * @param xmlFN: the XML path/file name
+     * @param threads: the number of threads reading (or decompressing)
+     * @return the reader, the caller must close it
+     * @throws IOException if the file can not be opened
+     */
+    public static WikiPageReader open(String xmlFN, int threads)
+            throws IOException {
+        if (threads > 1 && !WikiDumpInput.isCompressed(xmlFN)) {
+            return new MappedWikiPageReader(xmlFN, threads);
+        }
+        return new WikiPageReader(xmlFN, threads);
+    }
+
+    /**
+     * Wraps the reader in a sequential Stream, closing the stream closes the
+     * reader and the underlying file.
+     *
+     * @return a stream of the remaining pages in document order
+     */
+    public Stream<WikipediaPage> stream() {
+        Spliterator<WikipediaPage> split = Spliterators.spliteratorUnknownSize(
+                this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false).onClose(this::closeQuietly);
+    }
+
+    /**
+     * Moves straight to an input offset, which must be the end of a page read
+     * by an earlier run, without reading any of the pages before it. A plain
+     * file is seeked, a compressed one is decompressed up to the offset.
+     *
+     * @param offset: the uncompressed byte offset, as from getEndOffset
+     * @throws IOException if the input ends before the offset
+     */
+    public void skipTo(long offset) throws IOException {
+        if (nextPage != null || offset < bufferOffset + position) {
+            throw new IllegalStateException("can only skip forward");
+        }
+        long remaining = offset - (bufferOffset + position);
+        int buffered = (int) Math.min(remaining, limit - position);
+        position += buffered;
+        remaining -= buffered;
+        while (remaining > 0) {
+            long n = input.skip(remaining);
+            if (n <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("input ends before byte " + offset);
+                }
+                n = 1;
+            }
+            remaining -= n;
+        }
+        if (position == limit) {
+            bufferOffset = offset;
+            position = limit = 0;
+        }
+    }
+
+    /**
+     * Makes next give pages that are only scanned when first asked for a
+     * field, and then only for the fields of the projection. By default
+     * every page is scanned for every field as it is read.
+     *
+     * @param projection the fields that will be asked for, or null
+     */
+    public void setProjection(Set<WikipediaPage.Field> projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * Scans the wikitext of every page as it is parsed: the text is fed to
+     * the scanner straight out of the XML parser a piece at a time, so the
+     * decoded text is never built into a String or char[], though the raw
+     * bytes of the page are still buffered. The sources read hold the
+     * scanned page, with the fields of the projection, instead of the text.
+     *
+     * Every page is then scanned, so this is no use when the sources are
+     * first checked for being unchanged, see WikiOutputWriter.findUnchanged.
+     *
+     * This pays when the pages are scanned on the reading thread anyway, a
+     * MappedWikiPageReader decodes the text on its own threads and does not
+     * scan as it reads.
+     *
+     * @param scanning true to scan the pages as they are read
+     */
+    public void setScanning(boolean scanning) {
+        if (!scanning) {
+            pieceFactory = null;
+        } else if (pieceFactory == null) {
+            pieceFactory = newInputFactory();
+            pieceFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Leaves out the pages the filter does not take, their text is never
+     * read. Must be set before the first page is read.
+     *
+     * @param filter the pages to take, or null for all
+     */
+    public void setFilter(PageFilter filter) {
+        this.filter = (filter == null || filter.isEmpty()) ? null : filter;
+    }
+
+    /**
+     * @return the number of pages the filter left out so far
+     */
+    public int getFilteredCount() { return this.filtered; }
+
+    /**
+     * @return the number of malformed pages that were skipped so far
+     */
+    public int getSkippedCount() { return this.skipped; }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && !finished) {
+            try {
+                nextPage = readNextPage();
+            } catch (IOException ex) {
+                throw new IllegalStateException(
+                        "Failed XML Reading: " + ex.getMessage(), ex);
+            }
+            finished = (nextPage == null);
+        }
+        return nextPage != null;
+    }
+
+    @Override
+    public WikipediaPage next() {
+        WikiPageSource source = nextSource();
+        return projection == null ? source.parse() : source.parse(projection);
+    }
+
+    /**
+     * Reads the next page without scanning its wikitext, so the scan can be
+     * done elsewhere, ie. on another thread. With setScanning on the source
+     * has already been scanned, and only hands over the scanned page.
+     *
+     * @return the raw fields of the next page
+     */
+    public WikiPageSource nextSource() {
+        if (!hasNext()) throw new NoSuchElementException();
+        WikiPageSource source = nextPage;
+        nextPage = null;
+        return source;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        input.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Cuts out and parses page elements until one of them is well formed,
+     * and taken by the filter.
+     *
+     * @return the next page, or null at the end of the document
+     * @throws IOException if the input can not be read
+     */
+    private WikiPageSource readNextPage() throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.get();
+        long started = System.nanoTime();
+        while (cutNextPage()) {
+            long cut = System.nanoTime();
+            metrics.record(PipelineMetrics.Stage.READ, null, cut - started);
+            try {
+                WikiPageSource source = (pieceFactory == null)
+                        ? parsePage(factory,
+                                new ByteArrayInputStream(page, 0, pageLength),
+                                bufferOffset + position, filter)
+                        : parsePage(pieceFactory,
+                                new ByteArrayInputStream(page, 0, pageLength),
+                                bufferOffset + position, filter,
+                                projection == null
+                                        ? EnumSet.allOf(WikipediaPage.Field.class)
+                                        : projection);
+                if (source != null) {
+                    metrics.recordSince(PipelineMetrics.Stage.PARSE,
+                            source.getTitle(), cut);
+                    return source;
+                }
+                filtered++;
+            } catch (XMLStreamException ex) {
+                skipped++;
+                System.err.println("WARNING: skipped malformed page at byte "
+                        + pageOffset + ": " + ex.getMessage());
+            }
+            started = System.nanoTime();
+        }
+        return null;
+    }
+
+    /**
+     * Copies the bytes from the next page start tag through its end tag into
+     * page. A page cut off by the end of the input is logged and dropped.
+     *
+     * @return false if there are no more pages
+     * @throws IOException if the input can not be read
+     */
+    private boolean cutNextPage() throws IOException {
+
+        // skip ahead to the start tag, markup is never escaped inside text
+        int matched = 0;
+        while (matched < PAGE_START.length) {
+            if (position == limit && !refill()) return false;
+            byte b = buffer[position++];
+            if (b == PAGE_START[matched]) matched++;
+            else matched = (b == '<') ? 1 : 0;
+        }
+        pageOffset = bufferOffset + position - PAGE_START.length;
+        System.arraycopy(PAGE_START, 0, page, 0, PAGE_START.length);
+        pageLength = PAGE_START.length;
+
+        // copy up to and including the end tag
+        matched = 0;
+        while (matched < PAGE_END.length) {
+            if (position == limit && !refill()) {
+                skipped++;
+                System.err.println("WARNING: skipped page at byte "
+                        + pageOffset + ": cut off by the end of the input");
+                return false;
+            }
+            int from = position;
+            while (position < limit && matched < PAGE_END.length) {
+                byte b = buffer[position++];
+                if (b == PAGE_END[matched]) matched++;
+                else matched = (b == '<') ? 1 : 0;
+            }
+            int n = position - from;
+            if (pageLength + n > page.length) {
+                page = Arrays.copyOf(page, Math.max(page.length * 2, pageLength + n));
+            }
+            System.arraycopy(buffer, from, page, pageLength, n);
+            pageLength += n;
+        }
+        return true;
+    }
+
+    private boolean refill() throws IOException {
+        bufferOffset += limit;
+        position = limit = 0;
+        int n;
+        do {
+            n = input.read(buffer);
+        } while (n == 0);
+        if (n < 0) return false;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Parses a cut out page element, keeping the first title, id, and text
+     * elements just as getElementsByTagName(..).item(0) does, along with the
+     * id of the revision.
+     *
+     * @param factory the factory to parse with, see newInputFactory
+     * @param page the bytes of one page element, in UTF-8
+     * @param endOffset the input offset just past the element
+     * @param filter the pages to take, or null for all
+     * @return the raw fields of the element, or null if the filter does not
+     *      take it, in which case its text is never read
+     * @throws XMLStreamException if the page is malformed
+     */
+    static WikiPageSource parsePage(XMLInputFactory factory, InputStream page,
+            long endOffset, PageFilter filter) throws XMLStreamException {
+        return parsePage(factory, page, endOffset, filter, null);
+    }
+
+    /**
+     * Same as above, but with a projection the text is scanned as it is
+     * parsed and never built into a String, see setScanning.
+     *
+     * @param factory the factory to parse with, not coalescing when scanning
+     * @param page the bytes of one page element, in UTF-8
+     * @param endOffset the input offset just past the element
+     * @param filter the pages to take, or null for all
+     * @param scanFor the fields to scan the text for, or null to keep it
+     * @return the raw fields of the element, or the scanned page, or null if
+     *      the filter does not take it
+     * @throws XMLStreamException if the page is malformed
+     */
+    private static WikiPageSource parsePage(XMLInputFactory factory,
+            InputStream page, long endOffset, PageFilter filter,
+            Set<WikipediaPage.Field> scanFor) throws XMLStreamException {
+
+        XMLStreamReader reader = factory.createXMLStreamReader(page, "UTF-8");
+
+        String title = null, id = null, revisionId = null, text = null;
+        WikipediaPage.Extraction extraction = null;     // when scanning
+        long hash = 0;
+        String ns = null;
+        boolean redirect = false;
+        boolean filtering = (filter != null);  // until the filter is checked
+
+        try {
+            reader.nextTag(); // <page>
+            int depth = 1; // inside of <page>
+            int revisionDepth = -1; // inside of the first <revision>
+
+            while (depth > 0) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT: {
+                        String name = reader.getLocalName();
+                        if (filtering && depth == 1 && (name.equals("revision")
+                                || name.equals("text"))) {
+                            // all the filter looks at comes before these
+                            filtering = false;
+                            if (!accept(filter, ns, redirect, title, id)) {
+                                return null;
+                            }
+                        }
+                        if (title == null && name.equals("title")) {
+                            title = reader.getElementText();
+                        } else if (id == null && name.equals("id")) {
+                            id = reader.getElementText();
+                        } else if (revisionId == null && name.equals("id")
+                                && depth == revisionDepth) {
+                            revisionId = reader.getElementText();
+                        } else if (text == null && extraction == null
+                                && name.equals("text")) {
+                            if (scanFor == null) {
+                                text = reader.getElementText();
+                            } else if (title == null) {
+                                throw new XMLStreamException("text before title");
+                            } else {
+                                extraction = new WikipediaPage.Extraction(scanFor);
+                                hash = scanText(reader, extraction,
+                                        WikiPageSource.hashTitle(title));
+                            }
+                        } else if (ns == null && depth == 1 && name.equals("ns")) {
+                            ns = reader.getElementText();
+                        } else {
+                            if (depth == 1 && name.equals("redirect")) redirect = true;
+                            depth++;
+                            if (revisionId == null && name.equals("revision")) {
+                                revisionDepth = depth;
+                            }
+                        }
+                        break;
+                    }
+                    case XMLStreamConstants.END_ELEMENT: {
+                        if (depth == revisionDepth) revisionDepth = -1;
+                        depth--;
+                        break;
+                    }
+                    case XMLStreamConstants.END_DOCUMENT: {
+                        throw new XMLStreamException("unexpected end of page");
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (title == null || id == null) {
+            throw new XMLStreamException("page has no title or id");
+        }
+        if (filtering && !filter.accept(ns, redirect, title, id)) return null;
+
+        if (scanFor != null) {
+            if (extraction == null) {
+                extraction = new WikipediaPage.Extraction(scanFor);
+                hash = WikiPageSource.hashTitle(title);
+            }
+            return new WikiPageSource(revisionId == null ? "" : revisionId,
+                    new WikipediaPage(title, id, extraction), hash, endOffset);
+        }
+        return new WikiPageSource(title, id,
+                revisionId == null ? "" : revisionId,
+                text == null ? "" : text, endOffset);
+    }
+
+    /**
+     * Feeds the content of the text element to the scanner a piece at a
+     * time, straight out of the parser's buffer, up to its end tag.
+     *
+     * @return the content hash, the text hashed on to the given one
+     */
+    private static long scanText(XMLStreamReader reader,
+            WikipediaPage.Extraction extraction, long hash)
+            throws XMLStreamException {
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE: {
+                    char[] symbols = reader.getTextCharacters();
+                    int start = reader.getTextStart();
+                    int length = reader.getTextLength();
+                    extraction.feed(symbols, start, length);
+                    hash = WikiPageSource.hash(hash, symbols, start, length);
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT: {
+                    return hash;
+                }
+                case XMLStreamConstants.START_ELEMENT: {
+                    throw new XMLStreamException("element inside of the text");
+                }
+                case XMLStreamConstants.END_DOCUMENT: {
+                    throw new XMLStreamException("unexpected end of page");
+                }
+            }
+        }
+    }
+
+    private static boolean accept(PageFilter filter, String ns,
+            boolean redirect, String title, String id) throws XMLStreamException {
+        if (title == null || id == null) {
+            throw new XMLStreamException("page has no title or id");
+        }
+        return filter.accept(ns, redirect, title, id);
+    }
+
+    /**
+     * Dumps are far larger than the default JAXP entity accounting allows,
+     * so the limits are lifted where the implementation supports it.
+     *
+     * @return a non-validating, coalescing input factory
+     */
+    static XMLInputFactory newInputFactory() {
+        XMLInputFactory xif = XMLInputFactory.newInstance();
+        xif.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        xif.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        String[] limits = {
+            "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit",
+            "http://www.oracle.com/xml/jaxp/properties/maxGeneralEntitySizeLimit"
+        };
+        for (String limit : limits) {
+            try {
+                xif.setProperty(limit, "0");
+            } catch (IllegalArgumentException ex) {
+                // not the JDK parser, nothing to lift
+            }
+        }
+        return xif;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.util.Set;
+
+/**
+ * The raw fields of one page element, as read from the XML but before any of
+ * the wikitext has been scanned.
+ *
+ * Reading has to happen in document order, but turning a source into a
+ * WikipediaPage does not, so sources can be handed to other threads. A
+ * reader that streams the wikitext into the scanner as it reads it gives
+ * sources that hold the scanned page instead of the text.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class WikiPageSource {
+    protected final String pageTitle;       // name of the the wiki-page
+    protected final String revNumber;       // revision ID of the page
+    protected final String pageText;        // raw wikitext of the page
+    protected final String revisionId;      // id of the revision element
+    protected final long endOffset;         // input offset after the page
+    private long contentHash;               // see getContentHash, once known
+    private boolean hashed;
+    private final WikipediaPage scanned;    // scanned as read, or null
+
+    public WikiPageSource(String title, String revision, String text) {
+        this(title, revision, "", text, -1);
+    }
+
+    /**
+     * @param title the page title
+     * @param revision the page id
+     * @param revisionId the id of the page's revision, or "" if it has none
+     * @param text the raw wikitext of the page
+     * @param endOffset the input byte offset just past the page element, or
+     *      -1 if it is not known
+     */
+    public WikiPageSource(String title, String revision, String revisionId,
+            String text, long endOffset) {
+        this.pageTitle = title;
+        this.revNumber = revision;
+        this.revisionId = revisionId;
+        this.pageText = text;
+        this.endOffset = endOffset;
+        this.scanned = null;
+    }
+
+    /**
+     * A page whose wikitext was scanned as it was read, and never held.
+     *
+     * @param revisionId the id of the page's revision, or "" if it has none
+     * @param scanned the page
+     * @param contentHash the hash of the title and text, see getContentHash
+     * @param endOffset the input byte offset just past the page element
+     */
+    WikiPageSource(String revisionId, WikipediaPage scanned, long contentHash,
+            long endOffset) {
+        this.pageTitle = scanned.pageTitle;
+        this.revNumber = scanned.revNumber;
+        this.revisionId = revisionId;
+        this.pageText = null;
+        this.endOffset = endOffset;
+        this.contentHash = contentHash;
+        this.hashed = true;
+        this.scanned = scanned;
+        scanned.source = this;
+    }
+
+    public String getTitle() { return this.pageTitle; }
+    public String getRevision() { return this.revNumber; }
+    /** @return the raw wikitext, or null if it was scanned as it was read */
+    public String getText() { return this.pageText; }
+    public String getRevisionId() { return this.revisionId; }
+    public long getEndOffset() { return this.endOffset; }
+
+    /**
+     * A 64 bit FNV-1a hash of the title and text, everything the outputs are
+     * made from besides the page id.
+     *
+     * @return the hash of the page content
+     */
+    public long getContentHash() {
+        if (!hashed) {
+            contentHash = hash(hashTitle(pageTitle), pageText);
+            hashed = true;
+        }
+        return contentHash;
+    }
+
+    /**
+     * @return the content hash of a page with the title and no text, the
+     *      text can then be hashed on to it
+     */
+    static long hashTitle(String title) {
+        long hash = hash(0xcbf29ce484222325L, title);
+        return (hash ^ 0xFFFF) * 0x100000001b3L; // "ab"+"c" is not "a"+"bc"
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    static long hash(long hash, char[] symbols, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ symbols[i]) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Scans the wikitext, see WikipediaPage.
+     *
+     * @param extractors additional handlers to run in the same scan
+     * @return the parsed page
+     */
+    public WikipediaPage parse(WikiTextHandler... extractors) {
+        if (scanned != null) {
+            if (extractors.length > 0) throw new IllegalStateException(
+                    "the wikitext of " + pageTitle + " was scanned as it was read");
+            return scanned;
+        }
+        WikipediaPage page
+                = new WikipediaPage(pageTitle, revNumber, pageText, extractors);
+        page.source = this;
+        return page;
+    }
+
+    /**
+     * Builds the page without scanning its wikitext yet, only the fields of
+     * the projection are ever extracted, see WikipediaPage.
+     *
+     * @param projection the fields that will be asked for
+     * @return the page, scanned when first asked for a field
+     */
+    public WikipediaPage parse(Set<WikipediaPage.Field> projection) {
+        if (scanned != null) return scanned;
+        WikipediaPage page
+                = new WikipediaPage(pageTitle, revNumber, pageText, projection);
+        page.source = this;
+        return page;
+    }
+}
@@ -22,22 +22,17 @@
 
 package wikiparser;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * The purpose of this project is take a XML file from the Wikipedia Special
@@ -55,42 +50,60 @@ public class WikiParser {
     /**
      * Takes an XML file name as the only argument, specifically one that was
      * downloaded from https://en.wikipedia.org/wiki/Special:Export , which then
-     * uses the DOM to parse the file and create WikiArticle objects that are
-     * added to the list and returned to the caller.
+     * streams the file to create WikiArticle objects that are added to the
+     * list and returned to the caller.
+     * 
+     * The whole list is held in memory, so this is only meant for small files,
+     * use streamWikiXMLFile for full dumps.
+     * 
+     * @param xmlFN: the XML path/file name
+     * @return list: a list of WikiArticles
+     */
+    public static ArrayList<WikipediaPage> importWikiXMLFile(String xmlFN) {
+        return importWikiXMLFile(xmlFN, EnumSet.allOf(WikipediaPage.Field.class));
+    }
+    
+    /**
+     * Same as above, but only the fields of the projection are extracted, so
+     * a categories only import never pays for the citations or the text.
+     * 
+     * @param xmlFN: the XML path/file name
+     * @param projection: the fields that will be asked for
+     * @return list: a list of WikiArticles
+     */
+    public static ArrayList<WikipediaPage> importWikiXMLFile(String xmlFN,
+            Set<WikipediaPage.Field> projection) {
+        return importWikiXMLFile(xmlFN, projection, null);
+    }
+    
+    /**
+     * Same as above, but only the pages the filter takes are kept, the text
+     * of the others is never read.
      * 
      * @param xmlFN: the XML path/file name
+     * @param projection: the fields that will be asked for
+     * @param filter: the pages to keep, or null for all
      * @return list: a list of WikiArticles
      */
-    private static ArrayList<WikipediaPage> importWikiXMLFile(String xmlFN) {
+    public static ArrayList<WikipediaPage> importWikiXMLFile(String xmlFN,
+            Set<WikipediaPage.Field> projection, PageFilter filter) {
         
-        ArrayList<WikipediaPage> list;
-        DocumentBuilderFactory dbf;
-        DocumentBuilder db;
-        Document doc;
-        NodeList nl;
+        ArrayList<WikipediaPage> list = new ArrayList<>();
         
-        try {
-            // get the NEW document builder factory
-            dbf = DocumentBuilderFactory.newInstance();
-            // use factory to get instance of document builder
-            db = dbf.newDocumentBuilder();
-            // use builder to get instance of document
-            doc = db.parse(xmlFN);
-            // get a nodelist of elements (wiki pages)
-            nl = doc.getElementsByTagName("page");
-            // get the list for storing articles
-            list = new ArrayList<>();
-            // convert NodeList to ArrayList<WikiArticle>
-            for (int i = 0; i < nl.getLength(); i++) {
-                WikipediaPage newWikiPage = new WikipediaPage(nl.item(i));
-                list.add(newWikiPage);
+        try (WikiPageReader reader = new WikiPageReader(xmlFN)) {
+            reader.setProjection(projection);
+            reader.setFilter(filter);
+            reader.setScanning(true);
+            // pull each page off of the reader and keep it, extracted so
+            // that the list holds no wikitext
+            while (reader.hasNext()) {
+                list.add(reader.next().load());
             }
             
             System.out.println("Success Parsing XML!");
             return list;
             
-        } catch (ParserConfigurationException
-                | SAXException
+        } catch (IllegalStateException
                 | IOException ex) {
             System.err.println("ERROR: " + ex.getMessage());
             System.err.println("!! Failed XML Parsing !!");
@@ -99,178 +112,293 @@ public class WikiParser {
     }
     
     /**
+     * Opens an XML file from https://en.wikipedia.org/wiki/Special:Export as
+     * a lazy stream of pages, only one page is parsed and held at a time so
+     * this works for exports and dumps of any size.
+     * 
+     * The caller must close the stream, which also closes the file.
      * 
-     * @param wikiList - the array list of wikipedia pages
-     * @param docType - the type of document to build
-     *      1: xml DOM w/Categories
-     *      2: xml DOM w/Citations
-     *      3: xml DOM w/Anchors
-     *      4: xml DOM w/Text
-     *     -1: xml DOM w/All Tags
-     * @return a document including tags, determined by docType
+     * @param xmlFN: the XML path/file name
+     * @return stream: the pages in document order
+     * @throws IOException if the file can not be opened
      */
-    private static Document makeDocument(ArrayList<WikipediaPage> wikiList, int docType) {
-        
-        String xmlRootElement = "WikipediaPageParseData";
-        
-        DocumentBuilderFactory dbf;
-        DocumentBuilder db;
-        Document doc;
-        Element root;
+    public static Stream<WikipediaPage> streamWikiXMLFile(String xmlFN)
+            throws IOException {
+        return new WikiPageReader(xmlFN).stream();
+    }
+    
+    /**
+     * Same as above, but each page is only scanned when first asked for a
+     * field, and then only for the fields of the projection.
+     * 
+     * @param xmlFN: the XML path/file name
+     * @param projection: the fields that will be asked for
+     * @return stream: the pages in document order
+     * @throws IOException if the file can not be opened
+     */
+    public static Stream<WikipediaPage> streamWikiXMLFile(String xmlFN,
+            Set<WikipediaPage.Field> projection) throws IOException {
+        WikiPageReader reader = new WikiPageReader(xmlFN);
+        reader.setProjection(projection);
+        return reader.stream();
+    }
+    
+    /**
+     * Streams every page of the XML file straight into the five output files,
+     * one page at a time: the article (all tags), category, citation, anchor,
+     * and text documents are all appended to in the same single pass.
+     * 
+     * The input may be gzip or bzip2 compressed. With more than one thread the
+     * pages are scanned in parallel, but still written in the same order as
+     * the input, and multistream bzip2 dumps are also decompressed in parallel
+     * while uncompressed files are memory mapped and read in parallel.
+     * 
+     * @param xmlFN: the XML path/file name
+     * @param outputDir: the directory to write the XML documents into
+     * @param threads: the number of threads scanning pages (and decompressing)
+     * @return count: the number of pages written, or -1 on failure
+     */
+    public static int writeWikiXMLFiles(String xmlFN, String outputDir,
+            int threads) {
+        return writeWikiXMLFiles(xmlFN, outputDir, threads, 60, false, false);
+    }
+    
+    /**
+     * Same as above, but a WikiCheckpoint is saved with the output files every
+     * so often, and a run can pick up from the checkpoint left by an earlier,
+     * interrupted run rather than start over. Malformed pages are skipped and
+     * logged, they never end the run.
+     * 
+     * An incremental run keeps a manifest of the pages it wrote, and the next
+     * incremental run into the same directory copies the output of every page
+     * whose revision and content did not change, only new and changed pages
+     * are scanned. Deleted pages drop out of the outputs.
+     * 
+     * @param xmlFN: the XML path/file name
+     * @param outputDir: the directory to write the XML documents into
+     * @param threads: the number of threads scanning pages (and decompressing)
+     * @param checkpointSeconds: the least time between two checkpoints
+     * @param resume: continue from the checkpoint in outputDir, if there is one
+     * @param incremental: reuse the output of pages unchanged since last run
+     * @return count: the number of pages written, or -1 on failure
+     */
+    public static int writeWikiXMLFiles(String xmlFN, String outputDir,
+            int threads, int checkpointSeconds, boolean resume,
+            boolean incremental) {
+        return writeWikiXMLFiles(xmlFN, outputDir, threads, checkpointSeconds,
+                resume, incremental, 30, null);
+    }
+    
+    /**
+     * Same as above, and a line of progress is printed every so often, see
+     * PipelineMetrics, which are also shown through JMX while the run lasts.
+     * Only the pages the filter takes are written, the text of the others is
+     * never read.
+     * 
+     * @param xmlFN: the XML path/file name
+     * @param outputDir: the directory to write the XML documents into
+     * @param threads: the number of threads scanning pages (and decompressing)
+     * @param checkpointSeconds: the least time between two checkpoints
+     * @param resume: continue from the checkpoint in outputDir, if there is one
+     * @param incremental: reuse the output of pages unchanged since last run
+     * @param progressSeconds: the time between two lines of progress, 0 for none
+     * @param filter: the pages to write, or null for all
+     * @return count: the number of pages written, or -1 on failure
+     */
+    public static int writeWikiXMLFiles(String xmlFN, String outputDir,
+            int threads, int checkpointSeconds, boolean resume,
+            boolean incremental, int progressSeconds, PageFilter filter) {
         
+        PipelineMetrics metrics = PipelineMetrics.get();
+        metrics.reset();
         try {
-            // get the factory, builder, and new document
-            dbf = DocumentBuilderFactory.newInstance();
-            db = dbf.newDocumentBuilder();
-            doc = db.newDocument();
-            // get and then set the ROOT NODE of doc
-            root = doc.createElement(xmlRootElement);
-            doc.appendChild(root);
-            // iterate through list appending to doc
-            for (WikipediaPage wiki : wikiList) {
-                // create wikipedia page element and append it to the root
-                Element page = doc.createElement("page");
-                root.appendChild(page);
-                // create title element set value and append it to the article
-                Element title = doc.createElement("title");
-                title.appendChild(doc.createTextNode(wiki.pageTitle));
-                page.appendChild(title);
-                // create waNum element set value and append it to the article
-                Element waNum = doc.createElement("rev");
-                waNum.appendChild(doc.createTextNode(wiki.revNumber));
-                page.appendChild(waNum);
-                // iterate the articles list of links and append them
-                switch (docType) {
-                    case 1: {
-                        for (String categoryString : wiki.getCategories()) {
-                            Element cat = doc.createElement("category");
-                            cat.appendChild(doc.createTextNode(categoryString));
-                            page.appendChild(cat);
-                        }
-                        break;
-                    }
-                    case 2: {
-                        for (String citationSring : wiki.getCitations()) {
-                            Element cit = doc.createElement("citation");
-                            cit.appendChild(doc.createTextNode(citationSring));
-                            page.appendChild(cit);
-                        }
-                        break;
-                    }
-                    case 3: {
-                        for (String anchorString : wiki.getAnchors()) {
-                            Element anc = doc.createElement("anchor");
-                            anc.appendChild(doc.createTextNode(anchorString));
-                            page.appendChild(anc);
-                        }
-                        break;
-                    }
-                    case 4: {
-                        Element txt = doc.createElement("text");
-                        txt.appendChild(doc.createTextNode(wiki.getText()));
-                        page.appendChild(txt);
-                        break;
-                    }
-                    case -1: {
-                        // add Categories, Citations, Anchors, and Text
-                        for (String categoryString : wiki.getCategories()) {
-                            Element cat = doc.createElement("category");
-                            cat.appendChild(doc.createTextNode(categoryString));
-                            page.appendChild(cat);
-                        }
-                        for (String citationSring : wiki.getCitations()) {
-                            Element cit = doc.createElement("citation");
-                            cit.appendChild(doc.createTextNode(citationSring));
-                            page.appendChild(cit);
-                        }
-                        for (String anchorString : wiki.getAnchors()) {
-                            Element anc = doc.createElement("anchor");
-                            anc.appendChild(doc.createTextNode(anchorString));
-                            page.appendChild(anc);
+            WikiCheckpoint checkpoint = null;
+            if (resume) {
+                checkpoint = WikiCheckpoint.load(outputDir);
+                if (checkpoint == null) {
+                    System.out.println("No checkpoint, starting from the top");
+                } else if (!checkpoint.isFor(xmlFN)) {
+                    throw new IOException("the checkpoint in " + outputDir
+                            + " is for a different input");
+                } else if (checkpoint.isComplete()) {
+                    System.out.println("Nothing to resume, all "
+                            + checkpoint.getPages() + " pages were written");
+                    return checkpoint.getPages();
+                }
+            }
+            
+            // offsets count decompressed bytes, only a plain file's size is known
+            metrics.setInputSize(WikiDumpInput.isCompressed(xmlFN)
+                    ? -1 : new File(xmlFN).length());
+            
+            try (WikiPageReader reader = WikiPageReader.open(xmlFN, threads);
+                    WikiOutputWriter writer = new WikiOutputWriter(
+                            outputDir, checkpoint, incremental)) {
+                
+                writer.checkpointEvery(xmlFN, checkpointSeconds);
+                reader.setFilter(filter);
+                // one thread scans as it reads, the text is never built into
+                // a String, except when incremental: the unchanged pages are
+                // found before scanning so they are not scanned at all
+                reader.setScanning(threads <= 1 && !incremental);
+                if (checkpoint != null) {
+                    // carry on right after the last page checkpointed
+                    reader.skipTo(checkpoint.getInputOffset());
+                    System.out.println("Resuming after page "
+                            + checkpoint.getLastPageId() + ", "
+                            + checkpoint.getPages() + " pages written");
+                    metrics.setInputPosition(checkpoint.getInputOffset());
+                }
+                
+                Closeable progress = metrics.startProgressLog(progressSeconds);
+                try {
+                    if (threads > 1) {
+                        // scan on a pool, the processor keeps the input order
+                        new ParallelPageProcessor(threads).process(reader, writer);
+                    } else {
+                        // each page is parsed, written to all outputs, then dropped
+                        while (reader.hasNext()) {
+                            WikiPageSource source = reader.nextSource();
+                            WikipediaPage page = writer.findUnchanged(source);
+                            writer.writePage(page != null ? page : source.parse());
                         }
-                        Element txt = doc.createElement("text");
-                        txt.appendChild(doc.createTextNode(wiki.getText()));
-                        page.appendChild(txt);
-                        break;
                     }
+                } finally {
+                    progress.close();
                 }
-            } /* ALL ARTICLES NOW ADDED TO THE DOCUMENT OBJECT */
-            
-            return doc;
+                writer.setComplete();
+                
+                if (reader.getSkippedCount() > 0) {
+                    System.out.println("Skipped " + reader.getSkippedCount()
+                            + " malformed pages");
+                }
+                if (reader.getFilteredCount() > 0) {
+                    System.out.println("Left out " + reader.getFilteredCount()
+                            + " pages by the filter");
+                }
+                System.out.println("Success Parsing XML!");
+                return writer.getPageCount();
+            }
             
-        } catch (ParserConfigurationException ex) {
+        } catch (IllegalStateException
+                | IOException ex) {
             System.err.println("ERROR: " + ex.getMessage());
-            System.err.println("!! Doc Creation Failed !!");
+            System.err.println("!! XML Creation Failed !!");
         }
-        
-        return null;
+        return -1;
     }
     
     /**
+     * Looks up only the pages with the given titles in a multistream dump,
+     * using its index to seek straight to the streams that hold them, and
+     * writes them to the five output files.
      * 
-     * @param doc the DOM/XML document to write to a file
-     * @param fn the filename of the XML file to create
+     * @param dumpFN: the multistream .xml.bz2 path/file name
+     * @param indexFN: the dump's multistream index path/file name
+     * @param titlesFN: a file of the wanted titles, one per line
+     * @param outputDir: the directory to write the XML documents into
+     * @return count: the number of pages written, or -1 on failure
      */
-    private static void writeDocumentToXMLFile(Document doc, String fn) {
-        
-        TransformerFactory tf;
-        Transformer transx;
-        DOMSource source;
+    public static int writeWikiXMLPages(String dumpFN, String indexFN,
+            String titlesFN, String outputDir) {
         
         try {
-            tf = TransformerFactory.newInstance();
-            transx = tf.newTransformer();
-            source = new DOMSource(doc);
-            File xmlFile = new File(fn);
+            List<String> titles = Files.readAllLines(
+                    Paths.get(titlesFN), StandardCharsets.UTF_8);
+            MultistreamIndex index = MultistreamIndex.load(indexFN);
+            ArrayList<WikipediaPage> pages
+                    = new WikiPageLookup(dumpFN, index).findPages(titles);
             
-            StreamResult sRes = new StreamResult(xmlFile); // saving to xml file
+            try (WikiOutputWriter writer = new WikiOutputWriter(outputDir)) {
+                for (WikipediaPage page : pages) writer.writePage(page);
+            }
             
-            transx.transform(source, sRes);
-            System.out.println("XML File Saved: " + xmlFile.getAbsolutePath());
+            System.out.println("Found " + pages.size() + " of "
+                    + titles.size() + " pages");
+            return pages.size();
             
-        } catch (TransformerConfigurationException ex) {
-            System.err.println("ERROR 1: " + ex.getMessage());
-            System.err.println("!! XML Creation Failed !!");
-        } catch (TransformerException ex) {
-            System.err.println("ERROR 2: " + ex.getMessage());
-            System.err.println("!! XML Creation Failed !!");
+        } catch (IOException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            System.err.println("!! Page Lookup Failed !!");
         }
+        return -1;
     }
     
     /**
      * THE MAIN METHOD. <-- String fileName designates input for now. -->
      * 
+     * Optional arguments: an input file name to use instead of the default,
+     * which may be a .xml, .xml.gz, or .xml.bz2 file, and "--threads N" to
+     * scan pages (and decompress multistream dumps) on N threads. With
+     * "--index INDEX --titles TITLES" only the titles listed in the TITLES
+     * file are looked up in the (multistream) input using its INDEX.
+     * 
+     * A checkpoint is saved every minute, or every "--checkpoint SECONDS",
+     * and "--resume" picks up an interrupted run from its last checkpoint.
+     * With "--incremental" only the pages changed since the last incremental
+     * run are scanned again. A line of progress is printed every 30 seconds,
+     * or every "--progress SECONDS" (0 for none), and when "--progress" is
+     * given the time spent in each stage and the slowest pages are reported
+     * at the end, see PipelineMetrics.
+     * 
+     * The pages written can be narrowed by "--ns 0,14", "--no-redirects",
+     * "--title-prefix P", "--title-regex R" and "--ids 1-1000,5000", see
+     * PageFilter.
+     * 
      * @param args the command line arguments
      */
     public static void main(String[] args) {
-        // TODO code application logic here
         
         /**
          * CHANGE THIS FILENAME TO YOUR XML FILE TO PARSE
          * PLACE YOUR XML FILE INTO THE xmlInput FOLDER
          */
         String fileName = "xmlInput/WikiParseTestFile.xml";
+        String indexFileName = null;
+        String titlesFileName = null;
+        int threads = 1;
+        int checkpointSeconds = 60;
+        boolean resume = false;
+        boolean incremental = false;
+        int progressSeconds = 30;
+        boolean report = false;
+        PageFilter filter = new PageFilter();
         
-        ArrayList<WikipediaPage> list = importWikiXMLFile(fileName);
-        Document doc = makeDocument(list, -1);
-        fileName = "xmlOutput/articleOuput.xml";
-        writeDocumentToXMLFile(doc, fileName);
-        
-        for (int i = 1; i <= 4; i++) {
-            doc = makeDocument(list, i);
-            switch (i) {
-                case 1: fileName = "xmlOutput/pageCategoryDocument.xml";
-                break;
-                case 2: fileName = "xmlOutput/pageCitationDocument.xml";
-                break;
-                case 3: fileName = "xmlOutput/pageAnchorDocument.xml";
-                break;
-                case 4: fileName = "xmlOutput/pageTextDocument.xml";
+        for (int i = 0; i < args.length; i++) {
+            int used = filter.parseOption(args, i);
+            if (used >= 0) {
+                i = used;
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--index") && i + 1 < args.length) {
+                indexFileName = args[++i];
+            } else if (args[i].equals("--titles") && i + 1 < args.length) {
+                titlesFileName = args[++i];
+            } else if (args[i].equals("--checkpoint") && i + 1 < args.length) {
+                checkpointSeconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--progress") && i + 1 < args.length) {
+                progressSeconds = Integer.parseInt(args[++i]);
+                report = true;
+            } else if (args[i].equals("--resume")) {
+                resume = true;
+            } else if (args[i].equals("--incremental")) {
+                incremental = true;
+            } else {
+                fileName = args[i];
             }
-            writeDocumentToXMLFile(doc, fileName);
         }
         
-        
+        if (indexFileName != null && titlesFileName != null) {
+            writeWikiXMLPages(
+                    fileName, indexFileName, titlesFileName, "xmlOutput");
+        } else {
+            int count = writeWikiXMLFiles(fileName, "xmlOutput", threads,
+                    checkpointSeconds, resume, incremental, progressSeconds,
+                    filter);
+            if (report && count >= 0) {
+                System.out.print(PipelineMetrics.get().getReport());
+            }
+        }
     }
     
 }
@@ -0,0 +1,69 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+/**
+ * The callbacks fired by the WikiTextScanner as it walks a page's wikitext.
+ *
+ * Opening markup consumes both of its characters, while closing markup and
+ * the heading marker only consume the first one, the second character is
+ * looked at again (so "}}}" is two templateEnd's and "]]x" is linkEnd and
+ * then the text "]x"). Every method does nothing by default, so extractors
+ * only override the events they care about.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public interface WikiTextHandler {
+
+    /** a "[[" link opening */
+    default void linkStart() { }
+
+    /** the first ']' of a "]]" link closing */
+    default void linkEnd() { }
+
+    /** a "{{" template opening */
+    default void templateStart() { }
+
+    /** the first '}' of a "}}" template closing */
+    default void templateEnd() { }
+
+    /** a lone '{' */
+    default void braceOpen() { }
+
+    /** a lone '}' */
+    default void braceClose() { }
+
+    /** the first '=' of a "==" heading marker */
+    default void headingMarker() { }
+
+    /**
+     * A run of characters with no markup in it, lone '[', ']', and '=' are
+     * passed through as text.
+     *
+     * @param symbols the page text, only valid during the call
+     * @param start index of the first character of the run
+     * @param length number of characters in the run
+     */
+    default void text(char[] symbols, int start, int length) { }
+}
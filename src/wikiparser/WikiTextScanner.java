@@ -0,0 +1,191 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+/**
+ * A single pass lexer for wikitext: links, templates, braces, heading markers
+ * and runs of plain text are recognized in one scan of the page, and every
+ * handler is told about each of them in turn.
+ *
+ * Like the original extractors the last character of the text is never
+ * looked at, since every check needs the character after it.
+ *
+ * The text can also be fed in pieces, as it comes off of the XML parser, so
+ * a page never has to be held whole: the last character of each piece is
+ * kept back until the next piece shows what follows it. A run of text may
+ * then reach the handlers in more than one call.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public final class WikiTextScanner {
+
+    private static final int LINK_START = 0;
+    private static final int LINK_END = 1;
+    private static final int TEMPLATE_START = 2;
+    private static final int TEMPLATE_END = 3;
+    private static final int BRACE_OPEN = 4;
+    private static final int BRACE_CLOSE = 5;
+    private static final int HEADING_MARKER = 6;
+
+    private final WikiTextHandler[] handlers;
+    private final char[] held = new char[1];    // last character fed
+    private boolean holding;                    // true until it is looked at
+
+    /**
+     * A scanner for text that is fed in pieces.
+     *
+     * @param handlers the extractors to drive
+     */
+    public WikiTextScanner(WikiTextHandler... handlers) {
+        this.handlers = handlers;
+    }
+
+    /**
+     * Scans the text once, dispatching events to every handler.
+     *
+     * @param symbols the page text
+     * @param handlers the extractors to drive
+     */
+    public static void scan(char[] symbols, WikiTextHandler... handlers) {
+        WikiTextScanner scanner = new WikiTextScanner(handlers);
+        scanner.feed(symbols, 0, symbols.length);
+        scanner.finish();
+    }
+
+    /**
+     * Scans the next piece of the text.
+     *
+     * @param symbols holds the piece, only read during the call
+     * @param start index of the first character of the piece
+     * @param length number of characters in the piece
+     */
+    public void feed(char[] symbols, int start, int length) {
+
+        if (length <= 0) return;
+        int end = start + length;
+        int i = start;
+
+        // look at the character kept back, now that its next is known
+        if (holding) {
+            holding = false;
+            int event = event(held[0], symbols[start]);
+            if (event < 0) {
+                dispatchText(handlers, held, 0, 1);
+            } else {
+                dispatch(handlers, event);
+                i += width(event) - 1;
+            }
+        }
+
+        int runStart = i;
+        char current;
+
+        for (; i < end - 1; i++) {
+
+            current = symbols[i];
+
+            // only the markup characters can end a run of text
+            if (current != '[' && current != ']' && current != '{'
+                    && current != '}' && current != '=') continue;
+
+            int event = event(current, symbols[i + 1]);
+            if (event < 0) continue; // a lone '[', ']' or '=' is just text
+
+            if (i > runStart) dispatchText(handlers, symbols, runStart, i);
+            dispatch(handlers, event);
+
+            i += width(event) - 1;
+            runStart = i + 1;
+        }
+
+        // the last character waits for the next piece, unless it was used
+        if (runStart < end) {
+            if (end - 1 > runStart) {
+                dispatchText(handlers, symbols, runStart, end - 1);
+            }
+            held[0] = symbols[end - 1];
+            holding = true;
+        }
+    }
+
+    /**
+     * Ends the text, the character kept back is the last one and is never
+     * looked at. The scanner can then be fed another text.
+     */
+    public void finish() {
+        holding = false;
+    }
+
+    /**
+     * @return the markup the two characters start, or -1 if the first is
+     *      just text
+     */
+    private static int event(char current, char next) {
+        if (current == '[' && next == '[') {
+            return LINK_START;
+        } else if (current == ']' && next == ']') {
+            return LINK_END;
+        } else if (current == '{' && next == '{') {
+            return TEMPLATE_START;
+        } else if (current == '}' && next == '}') {
+            return TEMPLATE_END;
+        } else if (current == '{') {
+            return BRACE_OPEN;
+        } else if (current == '}') {
+            return BRACE_CLOSE;
+        } else if (current == '=' && next == '=') {
+            return HEADING_MARKER;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the characters consumed by the markup, openings step over
+     *      their second brace
+     */
+    private static int width(int event) {
+        return (event == LINK_START || event == TEMPLATE_START) ? 2 : 1;
+    }
+
+    private static void dispatch(WikiTextHandler[] handlers, int event) {
+        for (WikiTextHandler handler : handlers) {
+            switch (event) {
+                case LINK_START: handler.linkStart(); break;
+                case LINK_END: handler.linkEnd(); break;
+                case TEMPLATE_START: handler.templateStart(); break;
+                case TEMPLATE_END: handler.templateEnd(); break;
+                case BRACE_OPEN: handler.braceOpen(); break;
+                case BRACE_CLOSE: handler.braceClose(); break;
+                case HEADING_MARKER: handler.headingMarker(); break;
+            }
+        }
+    }
+
+    private static void dispatchText(WikiTextHandler[] handlers,
+            char[] symbols, int start, int end) {
+        for (WikiTextHandler handler : handlers) {
+            handler.text(symbols, start, end - start);
+        }
+    }
+}
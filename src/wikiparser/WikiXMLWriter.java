@@ -0,0 +1,354 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Streams WikipediaPages into one of the parse data XML files, a page at a
+ * time, without ever building a DOM for the document.
+ *
+ * The bytes written are the same as the DOM/Transformer path produced, so
+ * the escaping below mirrors what the JDK serializer does for UTF-8 output.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class WikiXMLWriter implements Closeable {
+
+    private static final String XML_DECLARATION
+            = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final String XML_ROOT_ELEMENT = "WikipediaPageParseData";
+
+    private final File xmlFile;     // the file being written
+    private final FileChannel file; // the open file, for its position
+    private final ByteCountingWriter out; // buffered UTF-8 writer over file
+    private final int docType;      // which tags go into each page
+    private boolean empty = true;   // no page has been written yet
+
+    private FileChannel copyFrom;   // the file pending bytes are copied from
+    private long copyStart;         // where in it the pending bytes start
+    private long copyLength;        // bytes pending, coalesced across pages
+
+    /**
+     *
+     * @param fn the filename of the XML file to create
+     * @param docType - the type of document to build
+     *      1: xml w/Categories
+     *      2: xml w/Citations
+     *      3: xml w/Anchors
+     *      4: xml w/Text
+     *     -1: xml w/All Tags
+     * @throws IOException if the file can not be created
+     */
+    public WikiXMLWriter(String fn, int docType) throws IOException {
+        this(fn, docType, -1);
+    }
+
+    /**
+     * Reopens a file left by an interrupted run, cutting it back to a length
+     * recorded by sync, so pages are appended right after the last one that
+     * was checkpointed.
+     *
+     * @param fn the filename of the XML file to continue
+     * @param docType - the type of document, as above
+     * @param resumeLength the length to cut the file back to, or -1 to create
+     *      a new file
+     * @throws IOException if the file can not be opened, or is too short
+     */
+    public WikiXMLWriter(String fn, int docType, long resumeLength)
+            throws IOException {
+        this.xmlFile = new File(fn);
+        this.docType = docType;
+        if (resumeLength < 0) {
+            this.file = FileChannel.open(xmlFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            this.file = FileChannel.open(xmlFile.toPath(),
+                    StandardOpenOption.WRITE);
+            if (file.size() < resumeLength) {
+                file.close();
+                throw new IOException(fn + " is shorter than its checkpoint");
+            }
+            file.truncate(resumeLength);
+            file.position(resumeLength);
+        }
+        this.out = new ByteCountingWriter(new BufferedWriter(
+                new OutputStreamWriter(Channels.newOutputStream(file),
+                        StandardCharsets.UTF_8), 1 << 16),
+                Math.max(resumeLength, 0));
+        if (resumeLength < 0) {
+            out.write(XML_DECLARATION);
+        } else {
+            // the declaration is ASCII, anything past it is the root element
+            this.empty = (resumeLength <= XML_DECLARATION.length());
+        }
+    }
+
+    public File getFile() { return this.xmlFile; }
+
+    /**
+     * @return the length the file will have, once everything written so far
+     *      is flushed
+     */
+    public long position() { return out.bytes; }
+
+    /**
+     * Pushes every page written so far down to the disk.
+     *
+     * @return the length of the file, which covers exactly those pages
+     * @throws IOException if the write fails
+     */
+    public long sync() throws IOException {
+        flushCopy();
+        out.flush();
+        file.force(false);
+        return file.position();
+    }
+
+    /**
+     * Appends one page element, with the tags determined by docType.
+     *
+     * @param wiki the page to write
+     * @return the length of the page element in bytes
+     * @throws IOException if the write fails
+     */
+    public long writePage(WikipediaPage wiki) throws IOException {
+
+        startRoot();
+        flushCopy();
+
+        long start = out.bytes;
+        out.write("<page>");
+        writeElement("title", wiki.pageTitle);
+        writeElement("rev", wiki.revNumber);
+
+        switch (docType) {
+            case 1: {
+                writeElements("category", wiki.getCategories());
+                break;
+            }
+            case 2: {
+                writeElements("citation", wiki.getCitations());
+                break;
+            }
+            case 3: {
+                writeElements("anchor", wiki.getAnchors());
+                break;
+            }
+            case 4: {
+                writeElement("text", wiki.getText());
+                break;
+            }
+            case -1: {
+                // add Categories, Citations, Anchors, and Text
+                writeElements("category", wiki.getCategories());
+                writeElements("citation", wiki.getCitations());
+                writeElements("anchor", wiki.getAnchors());
+                writeElement("text", wiki.getText());
+                break;
+            }
+        }
+
+        out.write("</page>");
+        return out.bytes - start;
+    }
+
+    /**
+     * Appends a page element exactly as it was written to another file, ie.
+     * by an earlier run. Copies of adjacent elements are merged, so a long
+     * stretch of unchanged pages is moved in one transfer.
+     *
+     * @param from the file holding the element
+     * @param start the offset of its start tag in that file
+     * @param length its length in bytes
+     * @throws IOException if the copy fails
+     */
+    public void copyPage(FileChannel from, long start, long length)
+            throws IOException {
+        startRoot();
+        if (from != copyFrom || start != copyStart + copyLength) {
+            flushCopy();
+            copyFrom = from;
+            copyStart = start;
+        }
+        copyLength += length;
+        out.bytes += length;
+    }
+
+    private void startRoot() throws IOException {
+        if (empty) {
+            out.write("<" + XML_ROOT_ELEMENT + ">");
+            empty = false;
+        }
+    }
+
+    private void flushCopy() throws IOException {
+        if (copyLength == 0) return;
+        out.flush(); // the copy goes after everything written before it
+        long at = copyStart, end = copyStart + copyLength;
+        while (at < end) {
+            long n = copyFrom.transferTo(at, end - at, file);
+            if (n <= 0) throw new IOException("could not copy from " + at);
+            at += n;
+        }
+        copyLength = 0;
+    }
+
+    /**
+     * Ends the root element and closes the file.
+     *
+     * @throws IOException if the final write fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushCopy();
+            if (empty) {
+                out.write("<" + XML_ROOT_ELEMENT + "/>");
+            } else {
+                out.write("</" + XML_ROOT_ELEMENT + ">");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeElements(String tag, ArrayList<String> values)
+            throws IOException {
+        for (String value : values) writeElement(tag, value);
+    }
+
+    private void writeElement(String tag, String value) throws IOException {
+        if (value.isEmpty()) {
+            out.write("<" + tag + "/>");
+        } else {
+            out.write("<" + tag + ">");
+            writeEscaped(value);
+            out.write("</" + tag + ">");
+        }
+    }
+
+    /**
+     * Writes character data, escaping markup characters, carriage returns,
+     * control characters, and supplementary characters the same way the
+     * Transformer does.
+     *
+     * @param value the text to escape
+     * @throws IOException if the write fails
+     */
+    private void writeEscaped(String value) throws IOException {
+
+        int start = 0;
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+
+            char current = value.charAt(i);
+            String escape = null;
+            int width = 1;
+
+            if (current == '&') escape = "&amp;";
+            else if (current == '<') escape = "&lt;";
+            else if (current == '>') escape = "&gt;";
+            else if (current < ' ' && current != '\t' && current != '\n') {
+                escape = "&#" + (int) current + ";";
+            } else if (current >= 0x7F && current <= 0x9F) {
+                escape = "&#" + (int) current + ";";
+            } else if (Character.isSurrogate(current)) {
+                int codePoint = value.codePointAt(i);
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    escape = "&#" + codePoint + ";";
+                    width = 2;
+                } else if (Character.isLowSurrogate(current)) {
+                    escape = "&#" + (int) current + ";";
+                } else if (i + 1 == length) {
+                    escape = ""; // a dangling high surrogate is dropped
+                } else {
+                    escape = "\uFFFD"; // unpaired, can not be encoded
+                }
+            }
+
+            if (escape != null) {
+                out.write(value, start, i - start);
+                out.write(escape);
+                i += width - 1;
+                start = i + 1;
+            }
+        }
+
+        out.write(value, start, length - start);
+    }
+
+    /**
+     * Keeps count of the UTF-8 bytes written through it, the escaping never
+     * lets an unpaired surrogate through, so every char has a fixed length.
+     */
+    private static final class ByteCountingWriter extends FilterWriter {
+
+        private long bytes;     // UTF-8 bytes written, including the start
+
+        ByteCountingWriter(Writer out, long start) {
+            super(out);
+            this.bytes = start;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            bytes += utf8Length((char) c);
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) bytes += utf8Length(cbuf[i]);
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                bytes += utf8Length(str.charAt(i));
+            }
+            out.write(str, off, len);
+        }
+
+        private static int utf8Length(char c) {
+            if (c < 0x80) return 1;
+            if (c < 0x800 || Character.isSurrogate(c)) return 2;
+            return 3;
+        }
+    }
+}
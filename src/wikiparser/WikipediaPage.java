@@ -22,231 +22,283 @@
 package wikiparser;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 /**
  * A Wrapper Class for the Wikipedia Special Export XML Data.
  * 
+ * A page built with a projection holds on to its raw wikitext until one of
+ * its fields is first asked for, then every field of the projection is
+ * extracted in one scan and the wikitext is let go. Fields outside of the
+ * projection are never extracted.
+ * 
  * @author W. Hatfield
  * @author U. Jaimini
  * @author U. Panjala
  */
 public class WikipediaPage {
+    
+    /** the fields that can be extracted from the wikitext */
+    public enum Field { CATEGORIES, CITATIONS, ANCHORS, TEXT }
+    
     protected final String pageTitle;       // name of the the wiki-page
     protected final String revNumber;        // revision ID of the page
-    private final String mainPageText;      // main article text from page'
+    private String mainPageText;            // main article text from page'
     
     private ArrayList<String> categories;   // categoriesList listed on the page
     private ArrayList<String> citations;    // citations used on the page
     private ArrayList<String> anchors;      // hyperlinks used on the page
     
+    private String wikiText;                // raw wikitext, until extracted
+    private final Set<Field> projection;    // the fields that may be extracted
+    private boolean extracted;              // true once the projection is
+    
+    WikiPageSource source;      // what the page was read from, or null
+    int previousRecord = -1;    // unchanged since this PageManifest record
+    
     public WikipediaPage(Node pageNode) {
         // cast to an Element for using: getElementsByTagName(String name)
-        Element page = (Element) pageNode;
-        //
-        this.pageTitle = parsePageTitle(page);
-        this.revNumber = parseRevisionNum(page);
-        //
-        char[] pageTextCharArray = parseMainPageText(page).toCharArray();
-        //
-        this.categories = parseTextForCategories(pageTextCharArray);
-        this.citations = parseTextForCitations(pageTextCharArray);
-        this.anchors = parseTextForAnchors(pageTextCharArray);
-        //
-        this.mainPageText 
-                = normalizeWikiPageTextForPOSTagging(pageTextCharArray);
-        //
-    }
-    
-    public ArrayList<String> getCategories() { return this.categories; }
-    public ArrayList<String> getCitations() { return this.citations; }
-    public ArrayList<String> getAnchors() { return this.anchors; }
-    public String getText() { return this.mainPageText; }
-    
-    private String parsePageTitle(Element page) {
-        return page.getElementsByTagName("title").item(0).getTextContent();
+        this(parsePageTitle((Element) pageNode),
+                parseRevisionNum((Element) pageNode),
+                parseMainPageText((Element) pageNode));
+    }
+
+    /**
+     * Builds the page from its raw wikitext, every extraction (and any extra
+     * extractors passed in) is driven from one scan of the text.
+     * 
+     * @param title the page title
+     * @param revision the page id
+     * @param text the raw wikitext of the page
+     * @param extractors additional handlers to run in the same scan
+     */
+    public WikipediaPage(String title, String revision, String text,
+            WikiTextHandler... extractors) {
+        this(title, revision, text, EnumSet.allOf(Field.class));
+        extract(extractors);
     }
     
-    private String parseRevisionNum(Element page) {
-        return page.getElementsByTagName("id").item(0).getTextContent();
+    /**
+     * Builds the page without scanning its wikitext, which is only done when
+     * a field of the projection is first asked for.
+     * 
+     * @param title the page title
+     * @param revision the page id
+     * @param text the raw wikitext of the page
+     * @param projection the fields that will be asked for
+     */
+    public WikipediaPage(String title, String revision, String text,
+            Set<Field> projection) {
+        this.pageTitle = title;
+        this.revNumber = revision;
+        this.wikiText = text;
+        this.projection = EnumSet.noneOf(Field.class);
+        this.projection.addAll(projection);
     }
     
-    private String parseMainPageText(Element page) {
-        return page.getElementsByTagName("text").item(0).getTextContent();
+    /**
+     * A page whose wikitext was scanned as it was read, see WikiPageReader.
+     * 
+     * @param title the page title
+     * @param revision the page id
+     * @param extraction the finished scan
+     */
+    WikipediaPage(String title, String revision, Extraction extraction) {
+        this.pageTitle = title;
+        this.revNumber = revision;
+        this.projection = extraction.projection;
+        take(extraction);
     }
     
-    private ArrayList<String> parseTextForCategories(char[] symbols) {
-        
-        ArrayList<String> categoriesList = new ArrayList<>();
-        
-        StringBuffer buff = null;
-        boolean reading = false;
-        char current, next;
-        
-        for (int i = 0; i < symbols.length - 1; i++) {
-            
-            current = symbols[i];
-            next = symbols[i + 1];
-            
-            if (current == '[' && next == '[') {
-                
-                buff = new StringBuffer();
-                reading = true;
-                i++; // step over second brace
-                
-            } else if (current == ']' && next == ']') {
-                
-                String possibleCategory = buff.toString();
-                String categoryPrefix = "Category:";
-                
-                if (possibleCategory.startsWith(categoryPrefix)) {
-                    categoriesList.add(
-                        possibleCategory.substring(categoryPrefix.length()));
-                }
-                
-                reading = false;
-                
-            } else if (reading) buff.append(current);
+    /**
+     * A page that has not changed since the previous run, its wikitext is
+     * never scanned, the writer copies what it wrote for it last time. It
+     * has no fields, asking for any one throws an IllegalStateException.
+     * 
+     * @param source the page as read
+     * @param previousRecord its record in the previous run's PageManifest
+     */
+    WikipediaPage(WikiPageSource source, int previousRecord) {
+        this.pageTitle = source.pageTitle;
+        this.revNumber = source.revNumber;
+        this.projection = EnumSet.allOf(Field.class);
+        this.extracted = true;
+        this.source = source;
+        this.previousRecord = previousRecord;
+    }
+    
+    public String getTitle() { return this.pageTitle; }
+    public String getRevision() { return this.revNumber; }
+    
+    /**
+     * @return the input offset just past the page element, or -1 if it is
+     *      not known
+     */
+    public long getEndOffset() {
+        return (source == null) ? -1 : source.getEndOffset();
+    }
+    
+    public ArrayList<String> getCategories() {
+        load(Field.CATEGORIES);
+        return this.categories;
+    }
+    
+    public ArrayList<String> getCitations() {
+        load(Field.CITATIONS);
+        return this.citations;
+    }
+    
+    public ArrayList<String> getAnchors() {
+        load(Field.ANCHORS);
+        return this.anchors;
+    }
+    
+    public String getText() {
+        load(Field.TEXT);
+        return this.mainPageText;
+    }
+    
+    /**
+     * @return the fields that may be asked for
+     */
+    public Set<Field> getProjection() { return EnumSet.copyOf(this.projection); }
+    
+    /**
+     * Extracts the projection if it has not been yet, ie. before handing the
+     * page to another thread.
+     * 
+     * @return this page
+     */
+    public synchronized WikipediaPage load() {
+        if (!extracted) extract();
+        return this;
+    }
+    
+    /**
+     * @throws IllegalStateException if the field was not extracted, being
+     *      out of the projection or the page unchanged since the last run
+     */
+    private synchronized void load(Field field) {
+        if (previousRecord >= 0) {
+            throw new IllegalStateException(field + " of page " + pageTitle
+                    + " was not extracted, it is unchanged since the last run");
         }
-        
-        return categoriesList;
+        if (!projection.contains(field)) {
+            throw new IllegalStateException(field + " of page " + pageTitle
+                    + " is not in the projection " + projection);
+        }
+        if (!extracted) extract();
     }
     
-    private ArrayList<String> parseTextForCitations(char[] symbols) {
-        
-        ArrayList<String> citationsList = new ArrayList<>();
-        
-        StringBuffer buff = null;
-        boolean reading = false;
-        int braceCount = 0;
-        char current, next;
-        
-        for (int i = 0; i < symbols.length - 1; i++) {
-            
-            current = symbols[i];
-            next = symbols[i + 1];
-            
-            if (current == '{') braceCount++;
-            if (current == '}') braceCount--;
-            
-            if (current == '{' && next == '{') {
-                
-                buff = new StringBuffer();
-                reading = true;
-                braceCount++; // add second brace to count
-                i++; // step over second brace
-                
-            } else if (current == '}' && next == '}') {
-                
-                String possibleCitation = buff.toString();
-                String citationPrefix = "cite";
-                
-                if (possibleCitation.startsWith(citationPrefix)) {
-                    String titlePrefix = "title";
-                    String titlePostfix = "|";
-                    
-                    int titleStartIndex 
-                            = possibleCitation.indexOf(titlePrefix)
-                            + titlePrefix.length();
-                    
-                    int titleEndIndex = possibleCitation.indexOf(
-                            titlePostfix,       // the character '|'
-                            titleStartIndex);   // index after "title"
-                    
-                    if (titleStartIndex > 0 && titleEndIndex > 0) {
-                        citationsList.add(possibleCitation.substring(
-                            titleStartIndex,    // front of title
-                            titleEndIndex));    // end of title
-                    }
-                }
-                
-                reading = false;
-                
-            } else if (reading) buff.append(current);
+    /**
+     * Extracts every field of the projection in one scan of the wikitext,
+     * which is then let go.
+     * 
+     * @param extractors additional handlers to run in the same scan
+     */
+    private void extract(WikiTextHandler... extractors) {
+        long started = System.nanoTime();
+        Extraction extraction = new Extraction(projection, extractors);
+        if (extraction.scanning()) {
+            // in pieces, so the text is not copied whole into a char[]
+            char[] piece = new char[Math.min(wikiText.length(), Extraction.PIECE)];
+            for (int at = 0; at < wikiText.length(); at += piece.length) {
+                int end = Math.min(wikiText.length(), at + piece.length);
+                wikiText.getChars(at, end, piece, 0);
+                extraction.feed(piece, 0, end - at);
+            }
         }
-        
-        return citationsList;
+        take(extraction);
+        this.wikiText = null;
+        PipelineMetrics.get().recordSince(
+                PipelineMetrics.Stage.EXTRACT, pageTitle, started);
+    }
+    
+    private void take(Extraction extraction) {
+        extraction.finish();
+        if (extraction.categories != null) {
+            this.categories = extraction.categories.getCategories();
+        }
+        if (extraction.citations != null) {
+            this.citations = extraction.citations.getCitations();
+        }
+        if (extraction.anchors != null) {
+            this.anchors = extraction.anchors.getAnchors();
+        }
+        if (extraction.text != null) this.mainPageText = extraction.text.getText();
+        this.extracted = true;
     }
     
-    private ArrayList<String> parseTextForAnchors(char[] symbols) {
+    /**
+     * The extractors of the fields of a projection, and the scanner that
+     * drives them, the wikitext may be fed in as many pieces as it comes in.
+     */
+    static final class Extraction {
         
-        ArrayList<String> anchorsList = new ArrayList<>();
+        /** the characters fed at a time, when the text is held whole */
+        static final int PIECE = 8192;
         
-        StringBuffer buff = null;
-        boolean reading = false;
-        int braceCount = 0;
-        char current, next;
+        private final Set<Field> projection;
+        private final CategoryExtractor categories;
+        private final CitationExtractor citations;
+        private final AnchorExtractor anchors;
+        private final NormalizedTextExtractor text;
+        private final WikiTextScanner scanner;
+        private final boolean scanning;     // false if nothing listens
         
-        for (int i = 0; i < symbols.length - 1; i++) {
-            
-            current = symbols[i];
-            next = symbols[i + 1];
-            
-            if (current == '{' && !reading) braceCount++;
-            if (current == '}' && !reading) braceCount--;
-            if (braceCount > 0) continue;
-            
-            if (current == '[' && next == '[') {
-                
-                buff = new StringBuffer();
-                reading = true;
-                i++; // step over second brace
-                
-            } else if (current == ']' && next == ']') {
-                
-                String possibleAnchor = buff.toString();
-                String categoryPrefix = "Category:";
-                
-                if (possibleAnchor.startsWith(categoryPrefix)) {
-                    // a category link, already parsed from text ...
-                    // set reading to false and then continue ...
-                    reading = false;
-                    continue;
-                }
-                
-                int bar = possibleAnchor.indexOf('|');
-                if (bar > 0) {
-                    anchorsList.add(possibleAnchor.substring(0, bar));
-                } else {
-                    anchorsList.add(possibleAnchor);
-                }
-                
-                reading = false;
-                
-            } else if (reading) buff.append(current);
+        /**
+         * @param projection the fields to extract
+         * @param extractors additional handlers to run in the same scan
+         */
+        Extraction(Set<Field> projection, WikiTextHandler... extractors) {
+            this.projection = EnumSet.noneOf(Field.class);
+            this.projection.addAll(projection);
+            this.categories = projection.contains(Field.CATEGORIES)
+                    ? new CategoryExtractor() : null;
+            this.citations = projection.contains(Field.CITATIONS)
+                    ? new CitationExtractor() : null;
+            this.anchors = projection.contains(Field.ANCHORS)
+                    ? new AnchorExtractor() : null;
+            this.text = projection.contains(Field.TEXT)
+                    ? new NormalizedTextExtractor() : null;
+            //
+            ArrayList<WikiTextHandler> handlers = new ArrayList<>(4 + extractors.length);
+            if (categories != null) handlers.add(categories);
+            if (citations != null) handlers.add(citations);
+            if (anchors != null) handlers.add(anchors);
+            if (text != null) handlers.add(text);
+            for (WikiTextHandler extractor : extractors) handlers.add(extractor);
+            this.scanning = !handlers.isEmpty();
+            this.scanner = new WikiTextScanner(
+                    handlers.toArray(new WikiTextHandler[handlers.size()]));
         }
         
-        return anchorsList;
-    }
-    
-    private String normalizeWikiPageTextForPOSTagging(char[] symbols) {
-        
-        StringBuffer buff = new StringBuffer();
-        int braceCount = 0;
-        char current, next;
+        boolean scanning() { return this.scanning; }
         
-        for (int i = 0; i < symbols.length - 1; i++) {
-            
-            current = symbols[i];
-            next = symbols[i + 1];
-            
-            if (current == '=' && next == '=') break;
-            
-            if (current == '{') braceCount++;
-            if (current == '}') braceCount--;
-            if (braceCount > 0) continue;
-            
-            int ascii = (int)current;
-            boolean digit = (ascii >= (int)'0') && (ascii <= (int)'9');
-            boolean upper = (ascii >= (int)'A') && (ascii <= (int)'Z');
-            boolean lower = (ascii >= (int)'a') && (ascii <= (int)'z');
-            boolean space = (ascii == (int)' ');
-            
-            if (digit || upper || lower || space) buff.append(current);
-            
+        /**
+         * @param symbols holds the next piece of the wikitext
+         * @param start index of its first character
+         * @param length number of characters in it
+         */
+        void feed(char[] symbols, int start, int length) {
+            if (scanning) scanner.feed(symbols, start, length);
         }
         
-        return buff.toString();
+        void finish() { scanner.finish(); }
+    }
+    
+    private static String parsePageTitle(Element page) {
+        return page.getElementsByTagName("title").item(0).getTextContent();
+    }
+
+    private static String parseRevisionNum(Element page) {
+        return page.getElementsByTagName("id").item(0).getTextContent();
+    }
+
+    private static String parseMainPageText(Element page) {
+        return page.getElementsByTagName("text").item(0).getTextContent();
     }
 }
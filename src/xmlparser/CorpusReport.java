@@ -0,0 +1,276 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Adds up the per page token counts of a whole corpus into three frequency
+ * tables: words, tags, and word_TAG pairs.
+ *
+ * The counts are kept by the ids of a TokenTable, and once that table holds
+ * more pairs than the budget, the counts so far are written out as sorted runs
+ * and counting starts over with a new table. At the end every run is merged,
+ * adding up the counts of equal keys, into one report per table, so the heap
+ * needed is set by the budget and not by the size of the vocabulary.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class CorpusReport implements Closeable {
+
+    private static final int WORDS = 0, TAGS = 1, PAIRS = 2;
+    private static final String[] TABLE_NAMES = { "words", "tags", "tokens" };
+
+    private final String reportPrefix;      // path and name of the reports
+    private final int budget;               // the most pairs held at once
+    private final List<List<Path>> runs = new ArrayList<>();
+    private Path spillDir;                  // made on the first spill
+
+    private TokenTable tokens = new TokenTable();
+    private long[] pairCounts = new long[1 << 10];
+    private long tokenCount;
+
+    /**
+     * @param reportPrefix the reports are written to this plus "_words.txt",
+     *      "_tags.txt" and "_tokens.txt"
+     * @param budget the most distinct word_TAG pairs to count in memory
+     */
+    public CorpusReport(String reportPrefix, int budget) {
+        this.reportPrefix = reportPrefix;
+        this.budget = Math.max(1, budget);
+        for (String name : TABLE_NAMES) runs.add(new ArrayList<>());
+    }
+
+    /**
+     * The table to count the next page with, this changes after a spill so
+     * it has to be asked for again for every page.
+     *
+     * @return the table the page counts are keyed by
+     */
+    public TokenTable getTokens() { return this.tokens; }
+
+    /**
+     * @return the number of tokens added so far
+     */
+    public long getTokenCount() { return this.tokenCount; }
+
+    /**
+     * Adds the counts of one page, spilling if that goes over the budget.
+     *
+     * @param counts the page's counts, keyed by the pair ids of getTokens()
+     * @throws IOException if a run can not be written
+     */
+    public void addPage(IntCounter counts) throws IOException {
+        if (tokens.size() > pairCounts.length) {
+            pairCounts = Arrays.copyOf(pairCounts,
+                    Math.max(tokens.size(), pairCounts.length * 2));
+        }
+        for (int i = 0; i < counts.size(); i++) {
+            pairCounts[counts.keyAt(i)] += counts.countAt(i);
+            tokenCount += counts.countAt(i);
+        }
+        if (tokens.size() >= budget) spill();
+    }
+
+    /**
+     * Merges everything counted into the three reports, each one line of
+     * "key count" per key, sorted by key.
+     *
+     * @throws IOException if a run or report can not be written or read
+     */
+    public void finish() throws IOException {
+        spill();
+        for (int table = 0; table < TABLE_NAMES.length; table++) {
+            merge(runs.get(table), Paths.get(reportPrefix + "_"
+                    + TABLE_NAMES[table] + ".txt"));
+        }
+    }
+
+    /**
+     * @return the number of runs written per table
+     */
+    public int getRunCount() { return this.runs.get(PAIRS).size(); }
+
+    /**
+     * Deletes the runs.
+     */
+    @Override
+    public void close() throws IOException {
+        for (List<Path> tableRuns : runs) {
+            for (Path run : tableRuns) Files.deleteIfExists(run);
+            tableRuns.clear();
+        }
+        if (spillDir != null) Files.deleteIfExists(spillDir);
+        spillDir = null;
+    }
+
+    /**
+     * Writes the counts held as one sorted run per table, and starts over.
+     */
+    private void spill() throws IOException {
+
+        if (tokens.size() == 0) return;
+
+        SymbolTable words = tokens.getWords(), tags = tokens.getTags();
+        long[] wordCounts = new long[words.size()];
+        long[] tagCounts = new long[tags.size()];
+        List<Entry> pairs = new ArrayList<>(tokens.size());
+
+        for (int pair = 0; pair < tokens.size(); pair++) {
+            long count = pairCounts[pair];
+            if (count == 0) continue;
+            wordCounts[tokens.getWord(pair)] += count;
+            int tag = tokens.getTag(pair);
+            if (tag != TokenTable.NO_TAG) tagCounts[tag] += count;
+            pairs.add(new Entry(tokens.getToken(pair), count));
+        }
+
+        writeRun(WORDS, entries(words, wordCounts));
+        writeRun(TAGS, entries(tags, tagCounts));
+        writeRun(PAIRS, pairs);
+
+        tokens = new TokenTable();
+        pairCounts = new long[1 << 10];
+    }
+
+    private static List<Entry> entries(SymbolTable symbols, long[] counts) {
+        List<Entry> entries = new ArrayList<>(counts.length);
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) entries.add(new Entry(symbols.get(id), counts[id]));
+        }
+        return entries;
+    }
+
+    private void writeRun(int table, List<Entry> entries) throws IOException {
+        entries.sort(Comparator.comparing(e -> e.key));
+        if (spillDir == null) {
+            spillDir = Files.createTempDirectory(
+                    Paths.get(reportPrefix).toAbsolutePath().getParent(), ".spill");
+        }
+        Path run = spillDir.resolve(TABLE_NAMES[table] + "."
+                + runs.get(table).size());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(run), 1 << 16))) {
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(entry.count);
+            }
+        }
+        runs.get(table).add(run);
+    }
+
+    /**
+     * The k-way merge: the run with the smallest key is always at the head
+     * of the queue, and equal keys from different runs are added together.
+     */
+    private static void merge(List<Path> tableRuns, Path report)
+            throws IOException {
+
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(
+                Math.max(1, tableRuns.size()), Comparator.comparing(r -> r.key));
+        List<RunReader> readers = new ArrayList<>();
+
+        try (BufferedWriter out = Files.newBufferedWriter(report,
+                StandardCharsets.UTF_8)) {
+            for (Path run : tableRuns) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) heads.add(reader);
+            }
+
+            while (!heads.isEmpty()) {
+                RunReader head = heads.poll();
+                String key = head.key;
+                long count = head.count;
+                if (head.next()) heads.add(head);
+                while (!heads.isEmpty() && heads.peek().key.equals(key)) {
+                    RunReader same = heads.poll();
+                    count += same.count;
+                    if (same.next()) heads.add(same);
+                }
+                out.write(key + " " + count + "\n");
+            }
+        } finally {
+            for (RunReader reader : readers) reader.close();
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final long count;
+
+        Entry(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Reads one sorted run back, an entry at a time.
+     */
+    private static final class RunReader implements Closeable {
+
+        private final DataInputStream in;
+        private int remaining;
+        String key;
+        long count;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(run), 1 << 16));
+            this.remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            key = new String(bytes, StandardCharsets.UTF_8);
+            count = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException { in.close(); }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.util.Arrays;
+
+/**
+ * Counts int keys, such as the ids of a SymbolTable, without boxing them.
+ *
+ * The keys are kept in the order they were first counted, and the hash slots
+ * are open addressed, so counting is an array probe and nothing is allocated
+ * once the arrays are big enough. A counter is meant to be cleared and reused,
+ * one page after another.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class IntCounter {
+
+    private int[] slots = new int[1 << 8];      // index + 1, 0 is empty
+    private int[] keys = new int[1 << 7];       // in the order first counted
+    private int[] counts = new int[1 << 7];
+    private int size;
+
+    /**
+     * @param key the key to count once more
+     */
+    public void increment(int key) {
+        add(key, 1);
+    }
+
+    /**
+     * @param key the key to count
+     * @param count the number to add to its count
+     */
+    public void add(int key, int count) {
+        int mask = slots.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                }
+                keys[size] = key;
+                counts[size] = count;
+                slots[slot] = ++size;
+                if (size * 2 > slots.length) rehash();
+                return;
+            }
+            if (keys[index] == key) {
+                counts[index] += count;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return its count, 0 if it was never counted
+     */
+    public int get(int key) {
+        int mask = slots.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0) return 0;
+            if (keys[index] == key) return counts[index];
+        }
+    }
+
+    /**
+     * @return the number of distinct keys counted
+     */
+    public int size() { return this.size; }
+
+    /**
+     * @param index from 0 to size - 1, in the order first counted
+     * @return the key at that index
+     */
+    public int keyAt(int index) { return this.keys[index]; }
+
+    /**
+     * @param index from 0 to size - 1, in the order first counted
+     * @return the count of the key at that index
+     */
+    public int countAt(int index) { return this.counts[index]; }
+
+    /**
+     * Forgets every count, keeping the arrays for reuse.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = mix(keys[index]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = index + 1;
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;   // ids are dense, so scatter them
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread safe cache that evicts the least recently used entries.
+ *
+ * The entries are spread over a fixed number of segments by hash, each one a
+ * LinkedHashMap in access order behind its own lock, so threads only contend
+ * when they touch the same segment. The capacity is split between the
+ * segments, so together they hold no more than it, but an entry is evicted
+ * once its own segment is full. Hits, misses, and evictions are counted,
+ * unless the cache is off.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+
+    private static final int SEGMENTS = 16;     // a power of two
+
+    private final Segment<K, V>[] segments;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity the most entries held, 0 turns the cache off
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity < 0");
+        this.capacity = capacity;
+        segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENTS];
+        // the first few segments take one more each, for the remainder
+        for (int i = 0; i < SEGMENTS; i++) {
+            int perSegment = capacity / SEGMENTS + (i < capacity % SEGMENTS ? 1 : 0);
+            segments[i] = new Segment<>(perSegment, evictions);
+        }
+    }
+
+    /**
+     * Looks the key up, computing and keeping the value on a miss. The value
+     * is computed outside of any lock, so two threads missing on the same
+     * key at once may both compute it.
+     *
+     * @param key the key
+     * @param compute makes the value from the key
+     * @return the cached or computed value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> compute) {
+        if (capacity == 0) return compute.apply(key);
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = compute.apply(key);
+        if (segment.capacity > 0) {
+            synchronized (segment) {
+                segment.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the most entries held
+     */
+    public int getCapacity() { return this.capacity; }
+
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+
+    /**
+     * @return the share of lookups that were hits, from 0 to 1
+     */
+    public double getHitRate() {
+        long hit = hits.sum(), total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return the number of entries held
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the counts and hit rate, for printing
+     */
+    public String getReport() {
+        return String.format("Cache hits %d, misses %d (%.1f%% hits), "
+                + "evictions %d, size %d", getHitCount(), getMissCount(),
+                getHitRate() * 100, getEvictionCount(), size());
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);  // spread the high bits, as HashMap does
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    /**
+     * One segment, in access order and evicting past its capacity.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final transient LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import wikiparser.PipelineMetrics;
+import wikiparser.WikiPageReader;
+import wikiparser.WikipediaPage;
+
+/**
+ * Keeps the parser and the taggers loaded in one long running JVM, serving
+ * requests over HTTP on the local machine, so an ad-hoc export does not pay
+ * for a new JVM, its warm-up, and the tagger model load every time.
+ *
+ * POST /parse with a Special:Export XML file as the body, or GET /parse with
+ * "path=FILE" naming an export (or dump) on this machine, streams back its
+ * pages as they are extracted:
+ * <pre>
+ *  &lt;WikipediaPageParseData&gt;
+ *    &lt;page&gt;&lt;title/&gt;&lt;rev/&gt;&lt;category/&gt;...&lt;citation/&gt;...
+ *          &lt;anchor/&gt;...&lt;text/&gt;&lt;tagged/&gt;&lt;/page&gt;
+ *    ...
+ *    &lt;latency pages="N" millis="T"/&gt;
+ *  &lt;/WikipediaPageParseData&gt;
+ * </pre>
+ * "fields=" picks out some of categories, citations, anchors, text and tags,
+ * by default all of them, only those are extracted from the pages. GET
+ * /metrics gives the PipelineMetrics report, where every request is also
+ * recorded as a REQUEST, followed by the slowest requests.
+ *
+ * The requests run on a fixed pool of workers, with a bounded number more
+ * waiting their turn, past that the server stops taking connections until
+ * one is done. The tagging of every request goes through one TaggingStage.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class ParseServer {
+
+    private static final String XML_ROOT_ELEMENT = "WikipediaPageParseData";
+
+    /** the number of slowest requests kept */
+    private static final int SLOWEST = 10;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;   // runs the requests
+    private final TaggingStage tagger;          // shared by the requests
+    private final int window;                   // pages tagged ahead, each
+    private final AtomicInteger requests = new AtomicInteger();
+    // kept apart from the slowest pages of the metrics, a whole request
+    // always takes longer than any one page and would push them all out
+    private final PriorityQueue<SlowRequest> slowest = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.nanos, b.nanos));
+
+    /**
+     * Binds the port on the loopback address, the server is not started.
+     *
+     * @param port the port to listen on, or 0 for any free one
+     * @param workers the number of requests served at once
+     * @param backlog the most requests waiting on a worker
+     * @param threads the number of taggers
+     * @param cacheSize the most categories and anchors to keep the tags of
+     * @throws IOException if the port can not be bound
+     */
+    public ParseServer(int port, int workers, int backlog, int threads,
+            int cacheSize) throws IOException {
+        this.tagger = new TaggingStage(xmlParser.TAGGER_MODEL, threads, cacheSize);
+        this.window = threads * 2;
+        ArrayBlockingQueue<Runnable> waiting = new ArrayBlockingQueue<>(Math.max(1, backlog));
+        // a full queue holds up the accepting thread rather than dropping
+        // the request, the connections then wait in the socket backlog
+        this.workers = new ThreadPoolExecutor(workers, workers, 0,
+                TimeUnit.MILLISECONDS, waiting, r -> {
+                    Thread t = new Thread(r, "parse-request");
+                    t.setDaemon(true);
+                    return t;
+                }, (r, executor) -> {
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        PipelineMetrics.get().registerQueue("requests", waiting::size);
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(this.workers);
+        this.server.createContext("/parse", this::parse);
+        this.server.createContext("/metrics", this::metrics);
+        TaggerPool.get(xmlParser.TAGGER_MODEL).preload(threads);
+    }
+
+    public void start() { server.start(); }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() { return server.getAddress().getPort(); }
+
+    /**
+     * Stops taking requests, and waits up to the given time for the ones
+     * being served.
+     *
+     * @param seconds the most time to wait
+     */
+    public void stop(int seconds) {
+        server.stop(seconds);
+        workers.shutdownNow();
+        tagger.close();
+        PipelineMetrics.get().unregisterQueue("requests");
+    }
+
+    /**
+     * Serves /parse, see above.
+     */
+    private void parse(HttpExchange exchange) throws IOException {
+        long begun = System.nanoTime();
+        int request = requests.incrementAndGet();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String path = query.get("path");
+        String label = "/parse #" + request + (path == null ? "" : " " + path);
+        int pages = 0;
+        try {
+            Set<String> fields;
+            try {
+                fields = parseFields(query.get("fields"));
+            } catch (IllegalArgumentException ex) {
+                sendText(exchange, 400, ex.getMessage());
+                return;
+            }
+            WikiPageReader reader;
+            if (path != null) {
+                try {
+                    reader = WikiPageReader.open(path, 1);
+                } catch (IOException ex) {
+                    sendText(exchange, 404, "can not open " + path + ": " + ex.getMessage());
+                    return;
+                }
+            } else if (exchange.getRequestMethod().equals("POST")) {
+                reader = new WikiPageReader(exchange.getRequestBody());
+            } else {
+                sendText(exchange, 405, "POST an export, or GET with path=FILE");
+                return;
+            }
+            try {
+                pages = writePages(exchange, reader, fields, begun);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            exchange.close();
+            long nanos = System.nanoTime() - begun;
+            PipelineMetrics.get().record(PipelineMetrics.Stage.REQUEST, null, nanos);
+            synchronized (slowest) {
+                slowest.add(new SlowRequest(label, pages, nanos));
+                if (slowest.size() > SLOWEST) slowest.poll();
+            }
+            System.out.println(String.format("%s: %d pages in %d ms", label,
+                    pages, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+    }
+
+    /**
+     * Streams the pages back as they are read, tagged ahead by up to a
+     * window of pages. A page that can not be read ends the document with
+     * an error element in place of the latency.
+     *
+     * @return the number of pages written
+     */
+    private int writePages(HttpExchange exchange, WikiPageReader reader,
+            Set<String> fields, long begun) throws IOException {
+        boolean tags = fields.contains("tags");
+        reader.setProjection(getProjection(fields));
+        reader.setScanning(true);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = new BufferedOutputStream(exchange.getResponseBody(), 1 << 16);
+        Writer out = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+        int pages = 0;
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement(XML_ROOT_ELEMENT);
+            ArrayDeque<WikipediaPage> waiting = new ArrayDeque<>();
+            ArrayDeque<Future<ArrayList<String>>> tagging = new ArrayDeque<>();
+            try {
+                while (true) {
+                    while (waiting.size() <= window && reader.hasNext()) {
+                        WikipediaPage next = reader.next();
+                        if (tags) {
+                            tagging.add(tagger.submit(next.getTitle(),
+                                    Collections.singletonList(next.getText()), false));
+                        }
+                        waiting.add(next);
+                    }
+                    if (waiting.isEmpty()) break;
+                    WikipediaPage wiki = waiting.remove();
+                    writePage(xml, wiki, fields, tags ? tagging.remove().get() : null);
+                    PipelineMetrics.get().addPages(1);
+                    pages++;
+                    xml.flush();
+                    out.flush();
+                }
+                xml.writeEmptyElement("latency");
+                xml.writeAttribute("pages", Integer.toString(pages));
+                xml.writeAttribute("millis", Long.toString(
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begun)));
+            } catch (IllegalStateException | ExecutionException ex) {
+                System.err.println("ERROR: " + ex.getMessage());
+                System.err.println("!! Failed Request !!");
+                xml.writeStartElement("error");
+                xml.writeCharacters(String.valueOf(ex.getMessage()));
+                xml.writeEndElement();
+                for (Future<ArrayList<String>> pending : tagging) pending.cancel(false);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            out.close();
+        }
+        return pages;
+    }
+
+    /**
+     * Writes one page element, with the fields asked for.
+     */
+    private static void writePage(XMLStreamWriter xml, WikipediaPage wiki,
+            Set<String> fields, ArrayList<String> tagged)
+            throws XMLStreamException {
+        xml.writeStartElement("page");
+        writeElement(xml, "title", wiki.getTitle());
+        writeElement(xml, "rev", wiki.getRevision());
+        if (fields.contains("categories")) {
+            for (String category : wiki.getCategories()) writeElement(xml, "category", category);
+        }
+        if (fields.contains("citations")) {
+            for (String citation : wiki.getCitations()) writeElement(xml, "citation", citation);
+        }
+        if (fields.contains("anchors")) {
+            for (String anchor : wiki.getAnchors()) writeElement(xml, "anchor", anchor);
+        }
+        if (fields.contains("text")) writeElement(xml, "text", wiki.getText());
+        if (tagged != null) {
+            for (String tokens : tagged) writeElement(xml, "tagged", tokens);
+        }
+        xml.writeEndElement();
+    }
+
+    private static void writeElement(XMLStreamWriter xml, String tag,
+            String value) throws XMLStreamException {
+        xml.writeStartElement(tag);
+        if (value != null) xml.writeCharacters(value);
+        xml.writeEndElement();
+    }
+
+    /**
+     * Serves /metrics, the PipelineMetrics report and queue depths.
+     */
+    private void metrics(HttpExchange exchange) throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.get();
+        StringBuilder report = new StringBuilder(metrics.getReport());
+        List<SlowRequest> requests;
+        synchronized (slowest) {
+            requests = new ArrayList<>(slowest);
+        }
+        requests.sort(Collections.reverseOrder((a, b) -> Long.compare(a.nanos, b.nanos)));
+        for (SlowRequest request : requests) {
+            report.append(String.format("slow     %8d us %-8s %s, %d pages%n",
+                    request.nanos / 1000, "REQUEST", request.label, request.pages));
+        }
+        report.append("queues: ").append(metrics.getQueueDepths()).append("\n");
+        sendText(exchange, 200, report.toString());
+        exchange.close();
+    }
+
+    private static void sendText(HttpExchange exchange, int status,
+            String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param fields a comma separated list of categories, citations,
+     *      anchors, text and tags, or null for all of them
+     * @return the fields named
+     * @throws IllegalArgumentException if one is not known
+     */
+    private static Set<String> parseFields(String fields) {
+        Set<String> known = new LinkedHashSet<>(Arrays.asList(
+                "categories", "citations", "anchors", "text", "tags"));
+        if (fields == null || fields.isEmpty()) return known;
+        Set<String> named = new HashSet<>();
+        for (String field : fields.split(",")) {
+            if (!known.contains(field.trim())) {
+                throw new IllegalArgumentException("unknown field " + field
+                        + ", expected some of " + known);
+            }
+            named.add(field.trim());
+        }
+        return named;
+    }
+
+    /**
+     * @param fields the fields asked for
+     * @return the fields of a WikipediaPage to extract for them
+     */
+    private static Set<WikipediaPage.Field> getProjection(Set<String> fields) {
+        Set<WikipediaPage.Field> projection = EnumSet.noneOf(WikipediaPage.Field.class);
+        if (fields.contains("categories")) projection.add(WikipediaPage.Field.CATEGORIES);
+        if (fields.contains("citations")) projection.add(WikipediaPage.Field.CITATIONS);
+        if (fields.contains("anchors")) projection.add(WikipediaPage.Field.ANCHORS);
+        if (fields.contains("text") || fields.contains("tags")) {
+            projection.add(WikipediaPage.Field.TEXT);
+        }
+        return projection;
+    }
+
+    /**
+     * @param query the raw query of a request URI, or null
+     * @return its names and decoded values
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) return values;
+        try {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals < 0) continue;
+                values.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return values;
+    }
+
+    /**
+     * A request, and how long it took.
+     */
+    private static final class SlowRequest {
+
+        private final String label;
+        private final int pages;
+        private final long nanos;
+
+        SlowRequest(String label, int pages, long nanos) {
+            this.label = label;
+            this.pages = pages;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Runs the server until the JVM is stopped.
+     *
+     * Optional arguments are "--port N", 8765 by default, "--workers N", the
+     * requests served at once, one per processor by default, "--backlog N",
+     * the most requests waiting on a worker, four per worker by default, and
+     * "--threads N" and "--cache N" as for xmlParser.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        int port = 8765;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int backlog = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int cacheSize = 100000;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--port")) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--workers")) workers = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--backlog")) backlog = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--cache")) cacheSize = Integer.parseInt(args[++i]);
+        }
+        if (backlog < 0) backlog = workers * 4;
+
+        try {
+            ParseServer server = new ParseServer(port, workers, backlog, threads, cacheSize);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            server.start();
+            System.out.println("Serving on http://localhost:" + server.getPort() + "/parse");
+        } catch (IOException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            System.err.println("!! Server Start Failed !!");
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per page outputs kept in a few large segment files instead of a file per
+ * page, with an index to fetch any one page's output back by its title.
+ *
+ * A store named "pageTextDocument" in a folder is the segments
+ * pageTextDocument-00000.seg, pageTextDocument-00001.seg, ... which are only
+ * ever appended to, and the index pageTextDocument.idx written when the store
+ * is closed. Each record in a segment is the length of the title, the title,
+ * and then the output, all UTF-8. The index holds a fixed size entry per
+ * record, the hash of the title, the segment, the offset, and the length,
+ * sorted by hash, and is memory mapped by the reader. Hashes can collide, so
+ * a lookup checks the title held in the record. If a title was stored more
+ * than once the last record is the one found, as a file would be overwritten.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class SegmentStore implements Closeable {
+
+    /** the size a segment is rolled over at, unless told otherwise */
+    public static final long DEFAULT_SEGMENT_BYTES = 1L << 30;
+
+    private static final int INDEX_MAGIC = 0x53454758;     // "SEGX"
+    private static final int HEADER_BYTES = 8;              // magic, count
+    private static final int ENTRY_BYTES = 20;              // hash, segment, offset, length
+
+    private final Path folder;
+    private final String name;
+    private final ByteBuffer index;     // the mapped entries, sorted by hash
+    private final int size;
+    private final List<FileChannel> segments = new ArrayList<>();
+
+    /**
+     * Opens a store written by a SegmentStore.Writer.
+     *
+     * @param folder the folder the store is in
+     * @param name the name of the store
+     * @throws IOException if the index can not be read
+     */
+    public SegmentStore(String folder, String name) throws IOException {
+        this.folder = Paths.get(folder);
+        this.name = name;
+        try (FileChannel file = FileChannel.open(indexPath(this.folder, name),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY,
+                    0, file.size());
+            if (file.size() < HEADER_BYTES || map.getInt(0) != INDEX_MAGIC) {
+                throw new IOException("not a segment store index: "
+                        + indexPath(this.folder, name));
+            }
+            this.size = map.getInt(4);
+            this.index = map;
+        }
+    }
+
+    /**
+     * @return the number of records in the store
+     */
+    public int size() { return this.size; }
+
+    /**
+     * @param title the page title
+     * @return the output stored for the page, or null if there is none
+     * @throws IOException if a segment can not be read
+     */
+    public String get(String title) throws IOException {
+
+        int hash = title.hashCode();
+        byte[] wanted = title.getBytes(StandardCharsets.UTF_8);
+
+        // the first entry with the hash
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hashAt(mid) < hash) low = mid + 1;
+            else high = mid;
+        }
+
+        String found = null;
+        for (int entry = low; entry < size && hashAt(entry) == hash; entry++) {
+            int at = HEADER_BYTES + entry * ENTRY_BYTES;
+            String output = read(index.getInt(at + 4), index.getLong(at + 8),
+                    index.getInt(at + 16), wanted);
+            if (output != null) found = output;    // the last one wins
+        }
+        return found;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel segment : segments) {
+            if (segment != null) segment.close();
+        }
+        segments.clear();
+    }
+
+    private int hashAt(int entry) {
+        return index.getInt(HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    /**
+     * Reads one record, if it has the title.
+     */
+    private String read(int segment, long offset, int length, byte[] title)
+            throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        FileChannel file = segment(segment);
+        while (record.hasRemaining()) {
+            if (file.read(record, offset + record.position()) < 0) {
+                throw new IOException("record cut off in segment " + segment
+                        + " of " + name);
+            }
+        }
+        record.flip();
+        int titleLength = record.getInt();
+        if (titleLength != title.length) return null;
+        for (byte b : title) {
+            if (record.get() != b) return null;
+        }
+        return new String(record.array(), record.position(),
+                record.remaining(), StandardCharsets.UTF_8);
+    }
+
+    private synchronized FileChannel segment(int segment) throws IOException {
+        while (segments.size() <= segment) segments.add(null);
+        FileChannel file = segments.get(segment);
+        if (file == null) {
+            file = FileChannel.open(segmentPath(folder, name, segment),
+                    StandardOpenOption.READ);
+            segments.set(segment, file);
+        }
+        return file;
+    }
+
+    static Path indexPath(Path folder, String name) {
+        return folder.resolve(name + ".idx");
+    }
+
+    static Path segmentPath(Path folder, String name, int segment) {
+        return folder.resolve(String.format("%s-%05d.seg", name, segment));
+    }
+
+    /**
+     * Appends page outputs to the segments, one after another, and writes the
+     * index when closed.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path folder;
+        private final String name;
+        private final long segmentBytes;
+        private final List<Path> segmentPaths = new ArrayList<>();
+
+        private DataOutputStream out;       // the segment being appended
+        private long position;              // the offset in that segment
+
+        private long[] keys = new long[1 << 10];    // hash << 32 | record
+        private int[] recordSegments = new int[1 << 10];
+        private long[] offsets = new long[1 << 10];
+        private int[] lengths = new int[1 << 10];
+        private int size;
+
+        /**
+         * @param folder the folder to put the store in
+         * @param name the name of the store
+         * @param segmentBytes the size to start a new segment at
+         * @throws IOException if the first segment can not be created
+         */
+        public Writer(String folder, String name, long segmentBytes)
+                throws IOException {
+            this.folder = Paths.get(folder);
+            this.name = name;
+            this.segmentBytes = segmentBytes;
+            Files.createDirectories(this.folder);
+            nextSegment();
+        }
+
+        /**
+         * Starts the output of a page, the record is appended when the
+         * returned writer is closed.
+         *
+         * @param title the page title
+         * @return a writer for the page's output
+         */
+        public java.io.Writer append(String title) {
+            return new StringWriter() {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) return;
+                    closed = true;
+                    put(title, toString());
+                }
+            };
+        }
+
+        /**
+         * @param title the page title
+         * @param output the page's output
+         * @throws IOException if the record can not be written
+         */
+        public void put(String title, String output) throws IOException {
+
+            byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+            byte[] outputBytes = output.getBytes(StandardCharsets.UTF_8);
+            int length = 4 + titleBytes.length + outputBytes.length;
+
+            if (position > 0 && position + length > segmentBytes) nextSegment();
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                recordSegments = Arrays.copyOf(recordSegments, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            keys[size] = ((long) title.hashCode() << 32) | size;
+            recordSegments[size] = segmentPaths.size() - 1;
+            offsets[size] = position;
+            lengths[size] = length;
+            size++;
+
+            out.writeInt(titleBytes.length);
+            out.write(titleBytes);
+            out.write(outputBytes);
+            position += length;
+        }
+
+        /**
+         * @return the segment files written so far
+         */
+        public List<Path> getSegments() { return this.segmentPaths; }
+
+        /**
+         * Closes the last segment and writes the index.
+         */
+        @Override
+        public void close() throws IOException {
+            if (out == null) return;
+            out.close();
+            out = null;
+
+            // sorted by hash, and by record among equal hashes
+            Arrays.sort(keys, 0, size);
+            Path index = indexPath(folder, name);
+            Path temp = index.resolveSibling(index.getFileName() + ".part");
+            try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp), 1 << 16))) {
+                idx.writeInt(INDEX_MAGIC);
+                idx.writeInt(size);
+                for (int i = 0; i < size; i++) {
+                    int record = (int) keys[i];
+                    idx.writeInt((int) (keys[i] >> 32));
+                    idx.writeInt(recordSegments[record]);
+                    idx.writeLong(offsets[record]);
+                    idx.writeInt(lengths[record]);
+                }
+            }
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private void nextSegment() throws IOException {
+            if (out != null) out.close();
+            Path segment = segmentPath(folder, name, segmentPaths.size());
+            segmentPaths.add(segment);
+            out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(segment), 1 << 16));
+            position = 0;
+        }
+    }
+}
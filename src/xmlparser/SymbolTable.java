@@ -0,0 +1,138 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.util.Arrays;
+
+/**
+ * Gives each distinct string a small int id, the first one seen is 0 and so
+ * on, so a string can be counted, compared and stored as an int.
+ *
+ * Strings are looked up by a range of characters, so interning a token of a
+ * larger text does not make a String of it unless it has not been seen yet.
+ * The table is open addressed over an int array, and safe to share between
+ * threads.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class SymbolTable {
+
+    private int[] slots = new int[1 << 10];     // id + 1, 0 is empty
+    private String[] symbols = new String[1 << 9];
+    private int[] hashes = new int[1 << 9];     // the hash of each symbol
+    private int size;
+
+    /**
+     * @param symbol the string
+     * @return its id, given it now if it is new
+     */
+    public int intern(String symbol) {
+        return intern(symbol, 0, symbol.length());
+    }
+
+    /**
+     * @param text holds the string
+     * @param start the index of its first character
+     * @param end the index after its last character
+     * @return its id, given it now if it is new
+     */
+    public synchronized int intern(CharSequence text, int start, int end) {
+
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                id = add(text.subSequence(start, end).toString(), hash);
+                slots[slot] = id + 1;
+                if (size * 2 > slots.length) rehash();
+                return id;
+            }
+            if (hashes[id] == hash && matches(symbols[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @param symbol the string
+     * @return its id, or -1 if it was never interned
+     */
+    public synchronized int find(String symbol) {
+        int hash = hash(symbol, 0, symbol.length());
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) return -1;
+            if (hashes[id] == hash && symbols[id].equals(symbol)) return id;
+        }
+    }
+
+    /**
+     * @param id an id given out by intern
+     * @return the string with that id
+     */
+    public synchronized String get(int id) { return this.symbols[id]; }
+
+    /**
+     * @return the number of distinct strings, ids run from 0 to size - 1
+     */
+    public synchronized int size() { return this.size; }
+
+    private int add(String symbol, int hash) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        symbols[size] = symbol;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + text.charAt(i);
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String symbol, CharSequence text,
+            int start, int end) {
+        if (symbol.length() != end - start) return false;
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,373 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tagged pages in a binary file that loads without parsing any text.
+ *
+ * Every word and every tag of the corpus is given an id by a dictionary, and
+ * each page is stored as two int arrays of the same length, the word id of
+ * each token and then the tag id of each token (-1 for a token with no tag).
+ * The file, all little endian, is:
+ *
+ *  - a header: the magic "WTCP", the version, the number of pages, the number
+ *    of tokens, and the offsets of the page index, titles, words and tags
+ *  - the pages, one after another
+ *  - the page index, the offset and token count of each page
+ *  - the titles, words and tags, each a count then a length and UTF-8 bytes
+ *    per string, the word with id n being the n'th word
+ *
+ * The pages are memory mapped by the reader, so a page is read as an
+ * IntBuffer straight out of the page cache.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class TaggedCorpus implements Closeable {
+
+    /** the tag id of a token that has no tag */
+    public static final int NO_TAG = TokenTable.NO_TAG;
+
+    private static final int MAGIC = 0x50435457;       // "WTCP" little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 56;
+    private static final int INDEX_ENTRY_BYTES = 12;    // offset, token count
+
+    private final FileChannel file;
+    private final long tokenCount;
+    private final long[] pageOffsets;
+    private final int[] pageTokens;
+    private final String[] titles, words, tags;
+    private final MappedByteBuffer[] chunks;    // whole pages, under 2GB each
+    private final long[] chunkOffsets;          // file offset of each chunk
+    private final int[] pageChunks;             // the chunk of each page
+
+    /**
+     * Maps a corpus file written by a TaggedCorpus.Writer.
+     *
+     * @param path the corpus file
+     * @throws IOException if the file can not be read or is not a corpus
+     */
+    public TaggedCorpus(Path path) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("not a tagged corpus: " + path);
+            }
+            int pages = header.getInt();
+            header.getInt();    // padding
+            this.tokenCount = header.getLong();
+            long indexOffset = header.getLong();
+            long titlesOffset = header.getLong();
+            long wordsOffset = header.getLong();
+            long tagsOffset = header.getLong();
+
+            ByteBuffer index = read(indexOffset, pages * INDEX_ENTRY_BYTES);
+            this.pageOffsets = new long[pages];
+            this.pageTokens = new int[pages];
+            for (int page = 0; page < pages; page++) {
+                pageOffsets[page] = index.getLong();
+                pageTokens[page] = index.getInt();
+            }
+
+            this.titles = readStrings(titlesOffset, wordsOffset);
+            this.words = readStrings(wordsOffset, tagsOffset);
+            this.tags = readStrings(tagsOffset, file.size());
+
+            // map the pages in chunks, each whole pages and under 2GB
+            List<MappedByteBuffer> maps = new ArrayList<>();
+            List<Long> starts = new ArrayList<>();
+            this.pageChunks = new int[pages];
+            int page = 0;
+            while (page < pages) {
+                long start = pageOffsets[page];
+                long end = start;
+                int first = page;
+                while (page < pages && pageEnd(page) - start <= Integer.MAX_VALUE) {
+                    pageChunks[page] = maps.size();
+                    end = pageEnd(page++);
+                }
+                if (page == first) throw new IOException("page over 2GB in " + path);
+                maps.add(file.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                starts.add(start);
+            }
+            this.chunks = maps.toArray(new MappedByteBuffer[0]);
+            this.chunkOffsets = new long[starts.size()];
+            for (int i = 0; i < chunkOffsets.length; i++) chunkOffsets[i] = starts.get(i);
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the number of pages in the corpus
+     */
+    public int getPageCount() { return this.pageOffsets.length; }
+
+    /**
+     * @return the number of tokens in the whole corpus
+     */
+    public long getTokenCount() { return this.tokenCount; }
+
+    /**
+     * @param page the page number, in the order written
+     * @return the number of tokens of the page
+     */
+    public int getTokenCount(int page) { return this.pageTokens[page]; }
+
+    /**
+     * @param page the page number, in the order written
+     * @return the title of the page
+     */
+    public String getTitle(int page) { return this.titles[page]; }
+
+    /**
+     * @param page the page number, in the order written
+     * @return the word id of every token of the page
+     */
+    public IntBuffer getWordIds(int page) { return ints(page, 0); }
+
+    /**
+     * @param page the page number, in the order written
+     * @return the tag id of every token of the page
+     */
+    public IntBuffer getTagIds(int page) { return ints(page, pageTokens[page]); }
+
+    /**
+     * @return the number of distinct words, ids run from 0 to this - 1
+     */
+    public int getWordCount() { return this.words.length; }
+
+    /**
+     * @return the number of distinct tags, ids run from 0 to this - 1
+     */
+    public int getTagCount() { return this.tags.length; }
+
+    public String getWord(int id) { return this.words[id]; }
+    public String getTag(int id) { return id == NO_TAG ? null : this.tags[id]; }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private long pageEnd(int page) {
+        return pageOffsets[page] + 8L * pageTokens[page];
+    }
+
+    private IntBuffer ints(int page, int skip) {
+        ByteBuffer chunk = chunks[pageChunks[page]].duplicate();
+        int at = (int) (pageOffsets[page] - chunkOffsets[pageChunks[page]]);
+        chunk.position(at + 4 * skip);
+        chunk.limit(at + 4 * (skip + pageTokens[page]));
+        return chunk.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("tagged corpus cut off at "
+                        + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private String[] readStrings(long from, long to) throws IOException {
+        if (to - from > Integer.MAX_VALUE) throw new IOException("dictionary over 2GB");
+        ByteBuffer strings = read(from, (int) (to - from));
+        String[] read = new String[strings.getInt()];
+        for (int i = 0; i < read.length; i++) {
+            int length = strings.getInt();
+            read[i] = new String(strings.array(), strings.position(), length,
+                    StandardCharsets.UTF_8);
+            strings.position(strings.position() + length);
+        }
+        return read;
+    }
+
+    /**
+     * Appends tagged pages to a new corpus file, the index, the dictionary
+     * and the header are written when it is closed.
+     */
+    public static class Writer implements Closeable {
+
+        private final FileChannel file;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private long position = HEADER_BYTES;   // where the buffer goes
+
+        private final SymbolTable words = new SymbolTable();
+        private final SymbolTable tags = new SymbolTable();
+        private final List<String> titles = new ArrayList<>();
+        private long[] pageOffsets = new long[1 << 10];
+        private int[] pageTokens = new int[1 << 10];
+        private long tokenCount;
+
+        private int[] wordIds = new int[1 << 12];  // of the page being added
+        private int[] tagIds = new int[1 << 12];
+
+        /**
+         * @param path the corpus file to create
+         * @throws IOException if the file can not be created
+         */
+        public Writer(Path path) throws IOException {
+            this.file = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * @param title the page title
+         * @param tagged the tagger's output for the page, tokens of the form
+         *      word_TAG separated by whitespace
+         * @throws IOException if the page can not be written
+         */
+        public void addPage(String title, List<String> tagged) throws IOException {
+
+            int tokens = 0;
+            for (String text : tagged) {
+                int length = text.length();
+                for (int i = 0; i < length; i++) {
+                    if (TokenTable.isSpace(text.charAt(i))) continue;
+                    int start = i;
+                    while (i < length && !TokenTable.isSpace(text.charAt(i))) i++;
+                    if (tokens == wordIds.length) {
+                        wordIds = Arrays.copyOf(wordIds, tokens * 2);
+                        tagIds = Arrays.copyOf(tagIds, tokens * 2);
+                    }
+                    int split = TokenTable.findTagSplit(text, start, i);
+                    if (split < 0) {
+                        wordIds[tokens] = words.intern(text, start, i);
+                        tagIds[tokens] = NO_TAG;
+                    } else {
+                        wordIds[tokens] = words.intern(text, start, split);
+                        tagIds[tokens] = tags.intern(text, split + 1, i);
+                    }
+                    tokens++;
+                }
+            }
+
+            int page = titles.size();
+            if (page == pageOffsets.length) {
+                pageOffsets = Arrays.copyOf(pageOffsets, page * 2);
+                pageTokens = Arrays.copyOf(pageTokens, page * 2);
+            }
+            titles.add(title);
+            pageOffsets[page] = position + buffer.position();
+            pageTokens[page] = tokens;
+            tokenCount += tokens;
+
+            for (int i = 0; i < tokens; i++) putInt(wordIds[i]);
+            for (int i = 0; i < tokens; i++) putInt(tagIds[i]);
+        }
+
+        /**
+         * @return the number of pages added so far
+         */
+        public int getPageCount() { return this.titles.size(); }
+
+        @Override
+        public void close() throws IOException {
+            if (!file.isOpen()) return;
+            try {
+                long indexOffset = position + buffer.position();
+                for (int page = 0; page < titles.size(); page++) {
+                    putLong(pageOffsets[page]);
+                    putInt(pageTokens[page]);
+                }
+                long titlesOffset = position + buffer.position();
+                putInt(titles.size());
+                for (String title : titles) putString(title);
+                long wordsOffset = position + buffer.position();
+                putStrings(words);
+                long tagsOffset = position + buffer.position();
+                putStrings(tags);
+                flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(titles.size()).putInt(0)
+                        .putLong(tokenCount).putLong(indexOffset)
+                        .putLong(titlesOffset).putLong(wordsOffset)
+                        .putLong(tagsOffset);
+                header.flip();
+                while (header.hasRemaining()) file.write(header, header.position());
+            } finally {
+                file.close();
+            }
+        }
+
+        private void putStrings(SymbolTable symbols) throws IOException {
+            int count = symbols.size();
+            putInt(count);
+            for (int id = 0; id < count; id++) putString(symbols.get(id));
+        }
+
+        private void putString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int at = 0; at < bytes.length; ) {
+                if (!buffer.hasRemaining()) flush();
+                int n = Math.min(buffer.remaining(), bytes.length - at);
+                buffer.put(bytes, at, n);
+                at += n;
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) flush();
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) flush();
+            buffer.putLong(value);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += file.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The MaxentTaggers loaded for a model, kept for the life of the JVM so they
+ * are loaded once rather than by every TaggingStage, since loading a model
+ * takes seconds and hundreds of MB.
+ *
+ * A tagger is not safe to share between threads, so each one is taken out of
+ * the pool, used by one thread, and put back. The pool grows to the most
+ * taggers in use at once, loading one whenever none is idle.
+ *
+ * Taggers can also be loaded ahead of time in the background, with preload,
+ * so the model loads while the pages are still being read.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class TaggerPool {
+
+    private static final ConcurrentMap<String, TaggerPool> POOLS
+            = new ConcurrentHashMap<>();
+
+    private final String model;
+    private final ArrayDeque<MaxentTagger> idle = new ArrayDeque<>();
+    private int preloading;     // taggers loading in the background
+    private int loaded;         // taggers loaded, idle or in use
+    private long loadNanos;     // time spent loading them
+
+    private TaggerPool(String model) {
+        this.model = model;
+    }
+
+    /**
+     * @param model the tagger model file, ie. english-bidirectional-distsim
+     * @return the pool shared by everything tagging with the model
+     */
+    public static TaggerPool get(String model) {
+        return POOLS.computeIfAbsent(model, TaggerPool::new);
+    }
+
+    /**
+     * Takes an idle tagger, waiting on one being preloaded if there is one,
+     * or else loads a new one on the calling thread.
+     *
+     * @return a tagger for the caller alone, until it is released
+     */
+    public MaxentTagger take() {
+        synchronized (this) {
+            boolean interrupted = false;
+            while (idle.isEmpty() && preloading > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (!idle.isEmpty()) return idle.pop();
+        }
+        return load();
+    }
+
+    /**
+     * Puts a tagger back for the next taker.
+     *
+     * @param tagger a tagger from take
+     */
+    public synchronized void release(MaxentTagger tagger) {
+        idle.push(tagger);
+        notifyAll();
+    }
+
+    /**
+     * Loads taggers in the background, each on its own thread, until there
+     * are at least the given number, and returns at once.
+     *
+     * @param count the number of taggers wanted
+     */
+    public synchronized void preload(int count) {
+        for (int i = loaded + preloading; i < count; i++) {
+            preloading++;
+            Thread loader = new Thread(() -> {
+                MaxentTagger tagger = null;
+                try {
+                    tagger = load();
+                } catch (RuntimeException ex) {
+                    System.err.println("ERROR: " + ex.getMessage());
+                    System.err.println("!! Tagger Preload Failed !!");
+                } finally {
+                    synchronized (this) {
+                        preloading--;
+                        if (tagger != null) idle.push(tagger);
+                        notifyAll();
+                    }
+                }
+            }, "tagger-preload");
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    /**
+     * @return the number of taggers loaded so far
+     */
+    public synchronized int getLoadedCount() { return this.loaded; }
+
+    /**
+     * @return the seconds spent loading them, over all threads
+     */
+    public synchronized double getLoadSeconds() { return this.loadNanos / 1e9; }
+
+    /**
+     * @return the model the taggers are loaded from
+     */
+    public String getModel() { return this.model; }
+
+    private MaxentTagger load() {
+        long begun = System.nanoTime();
+        MaxentTagger tagger = new MaxentTagger(model);
+        synchronized (this) {
+            loaded++;
+            loadNanos += System.nanoTime() - begun;
+        }
+        return tagger;
+    }
+}
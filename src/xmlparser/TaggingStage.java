@@ -0,0 +1,196 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import wikiparser.PipelineMetrics;
+
+/**
+ * Runs the POS tagging on a pool of workers, each with a MaxentTagger of its
+ * own since a tagger is not safe to share between threads. The taggers are
+ * taken from the TaggerPool of the model, so they outlive the stage and the
+ * next one need not load the model again.
+ *
+ * Work is handed over a page at a time: every input string of the page is
+ * tagged whole, so the tagger sees complete sentences, and the tagged strings
+ * come back in the same order through a Future.
+ *
+ * Short strings that stand on their own, like categories and anchors, repeat
+ * across a great many pages, those can go through an LruCache so a repeat
+ * costs a lookup rather than running the model again.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class TaggingStage implements Closeable {
+
+    private final ExecutorService workers;
+    private final TaggerPool taggers;                   // shared per model
+    private final LruCache<String, String> cache;       // tagged short inputs
+    private final AtomicLong tokens = new AtomicLong(); // tokens tagged
+    private final long started = System.nanoTime();
+
+    /** the longest input that is worth caching */
+    private static final int MAX_CACHED_LENGTH = 256;
+
+    /**
+     * @param model the tagger model file, ie. english-bidirectional-distsim
+     * @param threads the number of workers, and of taggers in use
+     */
+    public TaggingStage(String model, int threads) {
+        this(model, threads, 0);
+    }
+
+    /**
+     * @param model the tagger model file, ie. english-bidirectional-distsim
+     * @param threads the number of workers, and of taggers in use
+     * @param cacheSize the most short inputs to keep the tags of, or 0
+     */
+    public TaggingStage(String model, int threads, int cacheSize) {
+        this.cache = new LruCache<>(cacheSize);
+        this.taggers = TaggerPool.get(model);
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "pos-tagger");
+            t.setDaemon(true);
+            return t;
+        });
+        PipelineMetrics.get().registerQueue("tagging",
+                ((ThreadPoolExecutor) workers).getQueue()::size);
+    }
+
+    /**
+     * Queues the strings of one page for tagging.
+     *
+     * @param inputs the strings to tag, each one on its own
+     * @return the tagged strings, in the same order
+     */
+    public Future<ArrayList<String>> submit(List<String> inputs) {
+        return submit(inputs, false);
+    }
+
+    /**
+     * Queues the strings of one page for tagging.
+     *
+     * @param inputs the strings to tag, each one on its own
+     * @param contextFree true if the inputs are short strings whose tags do
+     *      not depend on any text around them, so they may be cached
+     * @return the tagged strings, in the same order
+     */
+    public Future<ArrayList<String>> submit(List<String> inputs,
+            boolean contextFree) {
+        return submit(null, inputs, contextFree);
+    }
+
+    /**
+     * Same as above, the time taken is recorded in the PipelineMetrics under
+     * the title of the page.
+     *
+     * @param title the title of the page, or null
+     * @param inputs the strings to tag, each one on its own
+     * @param contextFree true if the inputs may be cached, see above
+     * @return the tagged strings, in the same order
+     */
+    public Future<ArrayList<String>> submit(String title, List<String> inputs,
+            boolean contextFree) {
+        return workers.submit(() -> {
+            long begun = System.nanoTime(), count = 0;
+            MaxentTagger tagger = taggers.take();
+            ArrayList<String> tagged = new ArrayList<>(inputs.size());
+            try {
+                for (String input : inputs) {
+                    String output = (contextFree && input.length() <= MAX_CACHED_LENGTH)
+                            ? cache.computeIfAbsent(input, tagger::tagString)
+                            : tagger.tagString(input);
+                    count += countTokens(output);
+                    tagged.add(output);
+                }
+            } finally {
+                taggers.release(tagger);
+            }
+            tokens.addAndGet(count);
+            PipelineMetrics metrics = PipelineMetrics.get();
+            metrics.addTokens(count);
+            metrics.recordSince(PipelineMetrics.Stage.TAG, title, begun);
+            return tagged;
+        });
+    }
+
+    /**
+     * @return the cache of short inputs
+     */
+    public LruCache<String, String> getCache() { return this.cache; }
+
+    /**
+     * @return the number of tokens tagged so far
+     */
+    public long getTokenCount() { return this.tokens.get(); }
+
+    /**
+     * @return the tokens tagged per second, since the stage was created
+     */
+    public double getTokensPerSecond() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return seconds > 0 ? tokens.get() / seconds : 0;
+    }
+
+    /**
+     * @return the token count and rate, for printing
+     */
+    public String getReport() {
+        String report = String.format("Tagged %d tokens, %.0f tokens/sec",
+                getTokenCount(), getTokensPerSecond());
+        if (cache.getHitCount() + cache.getMissCount() > 0) {
+            report += "\n" + cache.getReport();
+        }
+        return report;
+    }
+
+    @Override
+    public void close() {
+        PipelineMetrics.get().unregisterQueue("tagging");
+        workers.shutdownNow();
+    }
+
+    /**
+     * @param tagged the output of tagString, tokens separated by whitespace
+     * @return the number of tokens in it
+     */
+    static int countTokens(String tagged) {
+        int count = 0;
+        boolean inToken = false;
+        for (int i = 0; i < tagged.length(); i++) {
+            boolean space = Character.isWhitespace(tagged.charAt(i));
+            if (!space && !inToken) count++;
+            inToken = !space;
+        }
+        return count;
+    }
+}
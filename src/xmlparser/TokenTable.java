@@ -0,0 +1,179 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.util.Arrays;
+
+/**
+ * The symbols of the tagged corpus: every word and every POS tag has an int
+ * id, and so does every word_TAG pair the tagger has written, so a token can
+ * be counted without making a String of it.
+ *
+ * A token is split at its last underscore, as in the tagger's output
+ * "Wikipedia_NNP", a token with no underscore is a word with no tag. One table
+ * is shared by every page of a run, so ids mean the same thing in every count.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class TokenTable {
+
+    /** the tag id of a token that has no tag */
+    public static final int NO_TAG = -1;
+
+    private final SymbolTable words = new SymbolTable();
+    private final SymbolTable tags = new SymbolTable();
+
+    private int[] slots = new int[1 << 10];     // pair id + 1, 0 is empty
+    private long[] pairs = new long[1 << 9];    // word id << 32 | tag id
+    private int size;
+
+    /**
+     * @return the ids of the words
+     */
+    public SymbolTable getWords() { return this.words; }
+
+    /**
+     * @return the ids of the tags
+     */
+    public SymbolTable getTags() { return this.tags; }
+
+    /**
+     * Counts every whitespace separated token of a tagger's output.
+     *
+     * @param tagged the output of tagString
+     * @param counts counts the id of each token's pair
+     * @return the number of tokens
+     */
+    public int countTokens(String tagged, IntCounter counts) {
+        int tokens = 0;
+        int length = tagged.length();
+        for (int i = 0; i < length; i++) {
+            if (isSpace(tagged.charAt(i))) continue;
+            int start = i;
+            while (i < length && !isSpace(tagged.charAt(i))) i++;
+            counts.increment(internToken(tagged, start, i));
+            tokens++;
+        }
+        return tokens;
+    }
+
+    /**
+     * @param text holds the token
+     * @param start the index of its first character
+     * @param end the index after its last character
+     * @return the id of the token's word_TAG pair
+     */
+    public int internToken(CharSequence text, int start, int end) {
+        int split = findTagSplit(text, start, end);
+        if (split < 0) {
+            return internPair(words.intern(text, start, end), NO_TAG);
+        }
+        return internPair(words.intern(text, start, split),
+                tags.intern(text, split + 1, end));
+    }
+
+    /**
+     * @param word a word id
+     * @param tag a tag id, or NO_TAG
+     * @return the id of the pair
+     */
+    public synchronized int internPair(int word, int tag) {
+        long pair = ((long) word << 32) | (tag & 0xFFFFFFFFL);
+        int mask = slots.length - 1;
+        for (int slot = mix(pair) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                if (size == pairs.length) pairs = Arrays.copyOf(pairs, size * 2);
+                pairs[size] = pair;
+                slots[slot] = ++size;
+                if (size * 2 > slots.length) rehash();
+                return size - 1;
+            }
+            if (pairs[id] == pair) return id;
+        }
+    }
+
+    /**
+     * @param pair a pair id
+     * @return the id of its word
+     */
+    public synchronized int getWord(int pair) { return (int) (pairs[pair] >>> 32); }
+
+    /**
+     * @param pair a pair id
+     * @return the id of its tag, or NO_TAG
+     */
+    public synchronized int getTag(int pair) { return (int) pairs[pair]; }
+
+    /**
+     * @param pair a pair id
+     * @return the token as the tagger wrote it, ie. "Wikipedia_NNP"
+     */
+    public String getToken(int pair) {
+        int tag = getTag(pair);
+        String word = words.get(getWord(pair));
+        return tag == NO_TAG ? word : word + "_" + tags.get(tag);
+    }
+
+    /**
+     * @return the number of distinct pairs, ids run from 0 to size - 1
+     */
+    public synchronized int size() { return this.size; }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(pairs[id]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(long pair) {
+        long h = pair * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @param text holds the token
+     * @param start the index of its first character
+     * @param end the index after its last character
+     * @return the index of the underscore before the tag, or -1 if none
+     */
+    static int findTagSplit(CharSequence text, int start, int end) {
+        for (int split = end - 1; split >= start; split--) {
+            if (text.charAt(split) == '_') return split;
+        }
+        return -1;
+    }
+
+    /**
+     * The same characters as the \s of a regex, which the reports split on.
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                || c == '\f' || c == '\r';
+    }
+}
@@ -22,9 +22,11 @@
 package xmlparser;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import wikiparser.WikipediaPage;
 
 /**
  * A Wrapper Class for the Wikipedia Special Export XML Data.
@@ -63,6 +65,32 @@ public class xmlPage {
         }
     }
     
+    /**
+     * Takes the fields straight from a page WikiParser extracted, in place
+     * of writing them to an XML document and reading them back.
+     * 
+     * @param wiki the extracted page, with the fields of the pageType
+     * @param pageType as above
+     */
+    public xmlPage(WikipediaPage wiki, String pageType) {
+        //
+        this.pageTitle = wiki.getTitle();
+        this.revNumber = wiki.getRevision();
+        //
+        if (pageType.equals("category") || pageType.equals("article")) {
+            this.categories = wiki.getCategories();
+        }
+        if (pageType.equals("citation") || pageType.equals("article")) {
+            this.citations = wiki.getCitations();
+        }
+        if (pageType.equals("anchor") || pageType.equals("article")) {
+            this.anchors = wiki.getAnchors();
+        }
+        if (pageType.equals("text") || pageType.equals("article")) {
+            this.mainPageText = new ArrayList<>(Collections.singletonList(wiki.getText()));
+        }
+    }
+    
     public ArrayList<String> getCategories() { return this.categories; }
     public ArrayList<String> getCitations() { return this.citations; }
     public ArrayList<String> getAnchors() { return this.anchors; }
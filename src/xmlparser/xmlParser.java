@@ -24,11 +24,11 @@ package xmlparser;
 
 import java.io.IOException;
  
-import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -46,10 +46,24 @@ import org.xml.sax.SAXException;
 import java.io.BufferedReader; 
 import java.io.FileReader; 
 import java.util.Collections; 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Iterator;
 import java.util.List;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import wikiparser.ExtractionStage;
+import wikiparser.PipelineMetrics;
+import wikiparser.WikiDumpInput;
+import wikiparser.WikiOutputWriter;
+import wikiparser.WikiPageReader;
+import wikiparser.WikiXMLWriter;
+import wikiparser.WikipediaPage;
 
 /**
  * The purpose of this project is take a XML file from the Wikipedia Special
@@ -64,6 +78,10 @@ import java.util.List;
  */
 public class xmlParser {
     
+    /** the model every tagger loads, -Dtagger.model overrides it */
+    static final String TAGGER_MODEL = System.getProperty("tagger.model",
+            "english-bidirectional-distsim.tagger");
+    
     /**
      * Takes an XML file name as the only argument, specifically one that was
      * downloaded from https://en.wikipedia.org/wiki/Special:Export , which then
@@ -87,7 +105,9 @@ public class xmlParser {
             // use factory to get instance of document builder
             db = dbf.newDocumentBuilder();
             // use builder to get instance of document
+            long parsing = System.nanoTime();
             doc = db.parse(xmlFN);
+            PipelineMetrics.get().recordSince(PipelineMetrics.Stage.PARSE, null, parsing);
             // get a nodelist of elements (wiki pages)
             nl = doc.getElementsByTagName("page");
             // get the list for storing articles
@@ -95,7 +115,9 @@ public class xmlParser {
 
             // convert NodeList to ArrayList<WikiArticle>
             for (int i = 0; i < nl.getLength(); i++) {
+                long extracting = System.nanoTime();
                 xmlPage newXmlPage = new xmlPage(nl.item(i), pageType);
+                PipelineMetrics.get().recordSince(PipelineMetrics.Stage.EXTRACT, newXmlPage.pageTitle, extracting);
                 list.add(newXmlPage);
             }
             
@@ -120,264 +142,346 @@ public class xmlParser {
      *      3: xml DOM w/Anchors
      *      4: xml DOM w/Text
      *     -1: xml DOM w/All Tags
-     * @return a document including tags, determined by docType
+     * @param threads - the number of taggers to run at once
+     * @param cacheSize - the most categories/anchors to keep the tags of
+     * @param reportBudget - the most word_TAG pairs the corpus report holds
+     *      in memory before spilling to disk
+     * @param segmentBytes - the segment size of the SegmentStores to write
+     *      the page outputs to, or 0 to write a file per page
+     * @param binaryCorpus - also write the tagged tokens as a TaggedCorpus
+     * @return a document including tags, determined by docType, or the
+     *      segment files when written to a store
      */
-    private static ArrayList<File> makeTextFile(ArrayList<xmlPage> wikiList, int docType, String fileName, String taggedFolderName, String cummReportsFolderName) {
+    private static ArrayList<File> makeTextFile(ArrayList<xmlPage> wikiList, int docType, String fileName, String taggedFolderName, String cummReportsFolderName, int threads, int cacheSize, int reportBudget, long segmentBytes, boolean binaryCorpus) {
+        return makeTextFile(wikiList.iterator(), docType, fileName, taggedFolderName, cummReportsFolderName, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
+    }
+    
+    /**
+     * Same as above, but the pages are taken as they come, so they need not
+     * all be held at once.
+     * 
+     * @param pages - the wikipedia pages, in order
+     * @return as above
+     */
+    private static ArrayList<File> makeTextFile(Iterator<xmlPage> pages, int docType, String fileName, String taggedFolderName, String cummReportsFolderName, int threads, int cacheSize, int reportBudget, long segmentBytes, boolean binaryCorpus) {
 
                       BufferedWriter output = null; 
                       
-                // InitiTaggeralize the tagger
-        MaxentTagger tagger = new MaxentTagger("english-bidirectional-distsim.tagger");  
+        // Initialize the taggers, one per worker, pages are tagged ahead of
+        // the writing by up to a window of pages
+        TaggingStage tagger = new TaggingStage(TAGGER_MODEL, threads, cacheSize);
+        ArrayDeque<Future<ArrayList<String>>> tagging = new ArrayDeque<>();
+        int window = threads * 4;
+        // pages being tagged, how many shows in the metrics as "tagged"
+        ArrayBlockingQueue<xmlPage> waiting = new ArrayBlockingQueue<>(window + 1);
+        PipelineMetrics.get().registerQueue("tagged", waiting::size);
+        // the counts are per page, and added up into the corpus report
+        CorpusReport report = new CorpusReport(cummReportsFolderName + "/Corpus_" + fileName, reportBudget);
+        IntCounter counts = new IntCounter();
+        // with a store the page outputs are appended to a few segment files
+        SegmentStore.Writer textStore = null, reportStore = null;
+        // and with a corpus the tagged tokens also go to one binary file
+        TaggedCorpus.Writer corpus = null;
         try {
             ArrayList<File> textPageFile = new ArrayList<File>();
-            // iterate through list appending to doc
-            for (xmlPage wiki : wikiList) {
+            if (segmentBytes > 0) {
+                textStore = new SegmentStore.Writer(taggedFolderName, fileName, segmentBytes);
+                reportStore = new SegmentStore.Writer(cummReportsFolderName, "Cumm_" + fileName, segmentBytes);
+            }
+            if (binaryCorpus) {
+                corpus = new TaggedCorpus.Writer(Paths.get(taggedFolderName, fileName + ".corpus"));
+            }
+            // iterate through the pages appending to doc
+            while (true) {
+                // keep the workers busy with the pages after this one
+                while (waiting.size() <= window && pages.hasNext()) {
+                    // categories and anchors are short and repeat, so cache them
+                    xmlPage next = pages.next();
+                    tagging.add(tagger.submit(next.pageTitle,
+                            getTaggerInputs(next, docType),
+                            docType == 1 || docType == 3));
+                    waiting.add(next);
+                }
+                if (waiting.isEmpty()) break;
+                xmlPage wiki = waiting.remove();
+                ArrayList<String> tagged = tagging.remove().get();
+                long writing = System.nanoTime();
+                if (corpus != null) corpus.addPage(wiki.pageTitle, tagged);
+                // the table changes when the corpus report spills
+                TokenTable tokens = report.getTokens();
                 // iterate the articles list of links and append them
                 switch (docType) {
                     case 1: {
-          Map<String, Integer> map = new HashMap<>();                      
-FileWriter AttrFstream;
-    BufferedWriter AttrOut;
-
-    // create your filewriter and bufferedreader
-    AttrFstream = new FileWriter("CumulativeReports/Cumm_"+fileName+wiki.pageTitle);
-    AttrOut = new BufferedWriter(AttrFstream);
-
-    // create your iterator for your map
-    Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();    
-                         
             File file = new File(taggedFolderName + "/"+wiki.pageTitle+".txt");
-            output = new BufferedWriter(new FileWriter(file));                        
-                        for (String categoryString : wiki.getCategories()) {
+            output = openOutput(file, textStore, wiki.pageTitle);                        
+                        for (int i = 0; i < tagged.size(); i++) {
+                             String categoryString = wiki.getCategories().get(i);
         System.out.println("start"+categoryString+ "stop\n");                              
-                             String taggedCategoryString = tagger.tagString(categoryString);
+                             String taggedCategoryString = tagged.get(i);
                              output.write(taggedCategoryString); 
-        Integer n = map.get(taggedCategoryString);
-        n = (n == null) ? 1 : ++n;
-        map.put(taggedCategoryString, n);     
+                             tokens.countTokens(taggedCategoryString, counts);
         System.out.println("start"+taggedCategoryString+ "stop\n");         
                         }
-    // then use the iterator to loop through the map, stopping when we reach the
-    // last record in the map or when we have printed enough records
-    while (it.hasNext()) {
-
-        // the key/value pair is stored here in pairs
-        HashMap.Entry<String, Integer> pairs = it.next();
-
-        // since you only want the value, we only care about pairs.getValue(), which is written to out
-        AttrOut.write(pairs.getValue() + "\n");
-        System.out.println(pairs.getValue() + "\n");   
-        System.out.println("in category");
-    }
-        AttrOut.flush();
-    // lastly, close the file and end
-    AttrOut.close();                         
-                        output.flush();                        
-                        textPageFile.add(file);
+    writeCounts(cummReportsFolderName + "/Cumm_" + fileName + wiki.pageTitle, reportStore, wiki.pageTitle, tokens, counts);
+                        output.close();                        
+                        if (textStore == null) textPageFile.add(file);
                         break;
                         
                     }
                     case 2: {
-          Map<String, Integer> map = new HashMap<>();                      
-FileWriter AttrFstream;
-    BufferedWriter AttrOut;
-
-    // create your filewriter and bufferedreader
-    AttrFstream = new FileWriter("CumulativeReports/Cumm_"+fileName+wiki.pageTitle);
-    AttrOut = new BufferedWriter(AttrFstream);
-
-    // create your iterator for your map
-    Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();                       
-                          
             File file = new File(fileName+wiki.pageTitle);
-            output = new BufferedWriter(new FileWriter(file));                         
-                        for (String citationSring : wiki.getCitations()) {               
-                             output.write(tagger.tagString(citationSring));
-        Integer n = map.get(citationSring);
-        n = (n == null) ? 1 : ++n;
-        map.put(citationSring, n);                             
+            output = openOutput(file, textStore, wiki.pageTitle);                         
+                        for (int i = 0; i < tagged.size(); i++) {
+                             output.write(tagged.get(i));
+                             tokens.countTokens(tagged.get(i), counts);
                         }
-    // then use the iterator to loop through the map, stopping when we reach the
-    // last record in the map or when we have printed enough records
-    while (it.hasNext()) {
-
-        // the key/value pair is stored here in pairs
-        HashMap.Entry<String, Integer> pairs = it.next();
-
-        // since you only want the value, we only care about pairs.getValue(), which is written to out
-        AttrOut.write(pairs.getValue() + "\n");
-        System.out.println(pairs.getValue() + "\n");
-    }
-        AttrOut.flush();
-    // lastly, close the file and end
-    AttrOut.close();   
-                        output.flush();                        
-                        textPageFile.add(file);
+    writeCounts(cummReportsFolderName + "/Cumm_" + fileName + wiki.pageTitle, reportStore, wiki.pageTitle, tokens, counts);
+                        output.close();                        
+                        if (textStore == null) textPageFile.add(file);
                         break;
                     }
                     case 3: {
-          Map<String, Integer> map = new HashMap<>();                      
-FileWriter AttrFstream;
-    BufferedWriter AttrOut;
-
-    // create your filewriter and bufferedreader
-    AttrFstream = new FileWriter("CumulativeReports/Cumm_"+fileName+wiki.pageTitle);
-    AttrOut = new BufferedWriter(AttrFstream);
-
-    // create your iterator for your map
-    Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();                       
-                          
             File file = new File(fileName+wiki.pageTitle);
-            output = new BufferedWriter(new FileWriter(file));                         
-                        for (String anchorString : wiki.getAnchors()) {          
-                             output.write(tagger.tagString(anchorString));
-        Integer n = map.get(anchorString);
-        n = (n == null) ? 1 : ++n;
-        map.put(anchorString, n);                             
+            output = openOutput(file, textStore, wiki.pageTitle);                         
+                        for (int i = 0; i < tagged.size(); i++) {
+                             output.write(tagged.get(i));
+                             tokens.countTokens(tagged.get(i), counts);
                         }
-    // then use the iterator to loop through the map, stopping when we reach the
-    // last record in the map or when we have printed enough records
-    while (it.hasNext()) {
-
-        // the key/value pair is stored here in pairs
-        HashMap.Entry<String, Integer> pairs = it.next();
-
-        // since you only want the value, we only care about pairs.getValue(), which is written to out
-        AttrOut.write(pairs.getValue() + "\n");
-    }
-        AttrOut.flush();
-    // lastly, close the file and end
-    AttrOut.close();   
-                        output.flush();                        
-                        textPageFile.add(file);
+    writeCounts(cummReportsFolderName + "/Cumm_" + fileName + wiki.pageTitle, reportStore, wiki.pageTitle, tokens, counts);
+                        output.close();                        
+                        if (textStore == null) textPageFile.add(file);
                         break;
                     }
                     case 4: {
-          Map<String, Integer> map = new HashMap<>();                      
-FileWriter AttrFstream;
-    BufferedWriter AttrOut;
-
-    // create your filewriter and bufferedreader
-    AttrFstream = new FileWriter("CumulativeReports/"+wiki.pageTitle+".txt");
-    AttrOut = new BufferedWriter(AttrFstream);
-
-    // create your iterator for your map
-    Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();                       
-                          
             //File file = new File(fileName+wiki.pageTitle);
             File file = new File(taggedFolderName + "/"+wiki.pageTitle+".txt");            
-            output = new BufferedWriter(new FileWriter(file));                         
-                        for (String textString : wiki.getText()) {  
-                            String[] textStringArray = textString.split("\\s+");
-                        for (String eachTextString : textStringArray) {                              
-                             String taggedTextString = tagger.tagString(eachTextString);                            
-                             output.write(taggedTextString);
-        Integer n = map.get(taggedTextString);
-        n = (n == null) ? 1 : ++n;
-        map.put(taggedTextString, n); 
-
+            output = openOutput(file, textStore, wiki.pageTitle);                         
+                        // each text is tagged whole, so the tagger sees its sentences
+                        for (String taggedText : tagged) {
+                             output.write(taggedText);
+                             tokens.countTokens(taggedText, counts);
                         }
-                        }
-
-for (HashMap.Entry<String, Integer> entry : map.entrySet())
-{
-    //System.out.println(entry.getKey() + "/" + entry.getValue());
-        AttrOut.write(entry.getKey() + "" + entry.getValue() + "\n");    
-}                        
-    // then use the iterator to loop through the map, stopping when we reach the
-    // last record in the map or when we have printed enough records
-//    while (it.hasNext()) {
-//
-//        // the key/value pair is stored here in pairs
-//        HashMap.Entry<String, Integer> pairs = it.next();
-//
-//        // since you only want the value, we only care about pairs.getValue(), which is written to out
-//        AttrOut.write(pairs.getValue() + "\n");
-//                System.out.println(pairs.getValue());
-//    }
-    AttrOut.flush();
-    // lastly, close the file and end
-    AttrOut.close();  
-                        output.flush();
-                        textPageFile.add(file);
+    writeCounts(cummReportsFolderName + "/" + wiki.pageTitle + ".txt", reportStore, wiki.pageTitle, tokens, counts);
+                        output.close();
+                        if (textStore == null) textPageFile.add(file);
                         break;
                     }
                     case -1: {
-          Map<String, Integer> map = new HashMap<>();                      
-FileWriter AttrFstream;
-    BufferedWriter AttrOut;
-
-    // create your filewriter and bufferedreader
-    AttrFstream = new FileWriter("CumulativeReports/Cumm_"+fileName+wiki.pageTitle);
-    AttrOut = new BufferedWriter(AttrFstream);
-
-    // create your iterator for your map
-    Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();                       
-                          
                                     File file = new File(fileName+wiki.pageTitle);
-            output = new BufferedWriter(new FileWriter(file)); 
-//            
-//                        // add Categories, Citations, Anchors, and Text
-//                        for (String categoryString : wiki.getCategories()) {
-//                             output.write(tagger.tagString(categoryString));
-//        Integer n = map.get(categoryString);
-//        n = (n == null) ? 1 : ++n;
-//        map.put(categoryString, n);                              
-//                        }
-//
-//                        for (String citationSring : wiki.getCitations()) {
-//                             output.write(tagger.tagString(citationSring));
-//        Integer n = map.get(citationSring);
-//        n = (n == null) ? 1 : ++n;
-//        map.put(citationSring, n);                              
-//                        }
-//
-//                        for (String anchorString : wiki.getAnchors()) {
-//                             output.write(tagger.tagString(anchorString));
-//        Integer n = map.get(anchorString);
-//        n = (n == null) ? 1 : ++n;
-//        map.put(anchorString, n);                              
-//                        }
-                        for (String textString : wiki.getText()) {
+            output = openOutput(file, textStore, wiki.pageTitle); 
+                        for (int i = 0; i < tagged.size(); i++) {
+                             String textString = wiki.getText().get(i);
         System.out.println("start"+textString+ "stop\n");                             
-                             output.write(tagger.tagString(textString));
-                             String taggedTextString = tagger.tagString(textString);                             
-        Integer n = map.get(taggedTextString);
-        n = (n == null) ? 1 : ++n;
-        map.put(taggedTextString, n);    
+                             String taggedTextString = tagged.get(i);
+                             output.write(taggedTextString);
+                             tokens.countTokens(taggedTextString, counts);
         System.out.println("start"+taggedTextString+ "stop\n");         
                         }
-    // then use the iterator to loop through the map, stopping when we reach the
-    // last record in the map or when we have printed enough records
-    while (it.hasNext()) {
-
-        // the key/value pair is stored here in pairs
-        HashMap.Entry<String, Integer> pairs = it.next();
-
-        // since you only want the value, we only care about pairs.getValue(), which is written to out
-        AttrOut.write(pairs.getValue() + "\n");
-    }
-        AttrOut.flush();
-    // lastly, close the file and end
-    AttrOut.close();  
-                        output.flush();                        
-                        textPageFile.add(file);
+    writeCounts(cummReportsFolderName + "/Cumm_" + fileName + wiki.pageTitle, reportStore, wiki.pageTitle, tokens, counts);
+                        output.close();                        
+                        if (textStore == null) textPageFile.add(file);
                         break;
                     }
                 }
+                // fold the page into the corpus wide totals
+                report.addPage(counts);
+                counts.clear();
+                PipelineMetrics.get().recordSince(PipelineMetrics.Stage.WRITE, wiki.pageTitle, writing);
+                PipelineMetrics.get().addPages(1);
             } /* ALL ARTICLES NOW ADDED TO THE DOCUMENT OBJECT */
             
+          System.out.println(tagger.getReport());
+          report.finish();
+          System.out.println("Corpus report: " + report.getTokenCount() + " tokens"
+                  + (report.getRunCount() > 1 ? ", merged from " + report.getRunCount() + " runs" : ""));
+          if (corpus != null) {
+              corpus.close();
+              System.out.println("Tagged corpus: " + corpus.getPageCount() + " pages");
+          }
+          if (textStore != null) {
+              textStore.close();
+              for (Path segment : textStore.getSegments()) textPageFile.add(segment.toFile());
+          }
           return textPageFile;  
             
         }  catch ( IOException e ) {
             e.printStackTrace();
+        } catch (InterruptedException | ExecutionException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            System.err.println("!! POS Tagging Failed !!");
         } finally {
             //if ( output != null ) output.close();
+            tagger.close();
+            PipelineMetrics.get().unregisterQueue("tagged");
+            try {
+                report.close();
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex.getMessage());
+                System.err.println("!! Corpus Report Cleanup Failed !!");
+            }
+            try {
+                if (textStore != null) textStore.close();
+                if (reportStore != null) reportStore.close();
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex.getMessage());
+                System.err.println("!! Segment Store Index Failed !!");
+            }
+            try {
+                if (corpus != null) corpus.close();
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex.getMessage());
+                System.err.println("!! Tagged Corpus Index Failed !!");
+            }
         }
         
         return null;
     }
     
+    /**
+     * Writes the report of one page, a "word_TAG count" line per distinct
+     * token, in order of appearance.
+     * 
+     * @param reportFN - the report path/file name
+     * @param store - the store to append the report to instead, or null
+     * @param title - the page title
+     * @param tokens - the table the counts are keyed by
+     * @param counts - the counts of the page
+     */
+    private static void writeCounts(String reportFN, SegmentStore.Writer store, String title, TokenTable tokens, IntCounter counts) throws IOException {
+        try (BufferedWriter out = openOutput(new File(reportFN), store, title)) {
+            for (int k = 0; k < counts.size(); k++) {
+                out.write(tokens.getToken(counts.keyAt(k)) + " " + counts.countAt(k) + "\n");
+            }
+        }
+    }
+    
+    /**
+     * Reads the pages straight out of a Special:Export file, or a dump, and
+     * hands the field the docType tags to the taggers in memory, skipping the
+     * XML document WikiParser writes and importAnchorXMLFile parses back in.
+     * Only that field is extracted from each page, and the document is only
+     * written if asked for.
+     * 
+     * @param dumpFN - the export or dump to read, which may be compressed
+     * @param docType - the type of document, as in makeTextFile
+     * @param xmlFolderName - the folder to also write the XML document to, as
+     *      WikiParser would, or null to not write it
+     * @param readThreads - the threads reading (or decompressing) the dump,
+     *      see WikiPageReader.open
+     * @param extractThreads - the threads extracting the field, or 0 to
+     *      extract it as the pages are read, see ExtractionStage
+     * @param queueSize - the most pages extracted ahead of the taggers, or 0
+     *      for four per extracting thread
+     * @return as makeTextFile, or null on failure
+     */
+    private static ArrayList<File> makeTextFileFromDump(String dumpFN, int docType, String xmlFolderName, String fileName, String taggedFolderName, String cummReportsFolderName, int readThreads, int extractThreads, int queueSize, int threads, int cacheSize, int reportBudget, long segmentBytes, boolean binaryCorpus) {
+        
+        String pageType = getPageType(docType);
+        PipelineMetrics metrics = PipelineMetrics.get();
+        WikiXMLWriter xml = null;
+        
+        // read, extract, tag and write each run on their own threads, with
+        // bounded queues in between, the writing stays on this thread since
+        // the outputs are in page order
+        try (WikiPageReader reader = WikiPageReader.open(dumpFN, readThreads);
+             ExtractionStage extraction = new ExtractionStage(reader, getProjection(docType), extractThreads, queueSize)) {
+            metrics.setInputSize(WikiDumpInput.isCompressed(dumpFN) ? -1 : new File(dumpFN).length());
+            if (xmlFolderName != null) {
+                xml = new WikiXMLWriter(xmlFolderName + "/" + WikiOutputWriter.getFileName(docType), docType);
+            }
+            WikiXMLWriter document = xml;
+            Iterator<xmlPage> pages = new Iterator<xmlPage>() {
+                @Override
+                public boolean hasNext() { return extraction.hasNext(); }
+                
+                @Override
+                public xmlPage next() {
+                    WikipediaPage wiki = extraction.next();
+                    if (document != null) {
+                        try {
+                            document.writePage(wiki);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }
+                    return new xmlPage(wiki, pageType);
+                }
+            };
+            return makeTextFile(pages, docType, fileName, taggedFolderName, cummReportsFolderName, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
+            
+        } catch (IllegalStateException
+                | UncheckedIOException
+                | IOException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            System.err.println("!! Failed XML Parsing !!");
+        } finally {
+            try {
+                if (xml != null) xml.close();
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex.getMessage());
+                System.err.println("!! XML Creation Failed !!");
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 
+     * @param docType - the type of document, as in makeTextFile
+     * @return the pageType of xmlPage that holds its field
+     */
+    private static String getPageType(int docType) {
+        switch (docType) {
+            case 1: return "category";
+            case 2: return "citation";
+            case 3: return "anchor";
+            case 4: return "text";
+            default: return "article";
+        }
+    }
+    
+    /**
+     * 
+     * @param docType - the type of document, as in makeTextFile
+     * @return the fields of a WikipediaPage it is made from
+     */
+    private static Set<WikipediaPage.Field> getProjection(int docType) {
+        switch (docType) {
+            case 1: return EnumSet.of(WikipediaPage.Field.CATEGORIES);
+            case 2: return EnumSet.of(WikipediaPage.Field.CITATIONS);
+            case 3: return EnumSet.of(WikipediaPage.Field.ANCHORS);
+            case 4: return EnumSet.of(WikipediaPage.Field.TEXT);
+            default: return EnumSet.allOf(WikipediaPage.Field.class);
+        }
+    }
+    
+    /**
+     * 
+     * @param file - the file of a page's output
+     * @param store - the store to append the output to instead, or null
+     * @param title - the page title
+     * @return a writer for the output, closing it finishes the output
+     */
+    private static BufferedWriter openOutput(File file, SegmentStore.Writer store, String title) throws IOException {
+        if (store != null) return new BufferedWriter(store.append(title));
+        return new BufferedWriter(new FileWriter(file));
+    }
+    
+    /**
+     * 
+     * @param wiki - the page to tag
+     * @param docType - the type of document, as in makeTextFile
+     * @return the strings of the page that are tagged for that docType
+     */
+    private static List<String> getTaggerInputs(xmlPage wiki, int docType) {
+        switch (docType) {
+            case 1: return wiki.getCategories();
+            case 2: return wiki.getCitations();
+            case 3: return wiki.getAnchors();
+            default: return wiki.getText();
+        }
+    }
+    
     /**
      * 
      * @param doc the DOM/XML document to write to a file
@@ -432,10 +536,70 @@ if (!theDir.exists()) {
     /**
      * THE MAIN METHOD. <-- String fileName designates input for now. -->
      * 
+     * Optional argument "--threads N" runs N taggers at once, by default one
+     * per processor, "--cache N" keeps the tags of up to N categories and
+     * anchors, 100000 by default, and "--report-budget N" spills the corpus
+     * report to disk past N distinct word_TAG pairs, 2000000 by default.
+     * "--store" appends the tagged pages and their reports to SegmentStores
+     * instead of writing a file per page, "--segment-mb N" sets the size
+     * their segments roll over at, 1024 by default. "--corpus" also writes
+     * the tagged tokens to a binary TaggedCorpus, for fast reloading.
+     * A line of progress is printed every 30 seconds, or every
+     * "--progress SECONDS" (0 for none), and when "--progress" is given the
+     * time spent in each stage and the slowest pages are reported at the
+     * end, see PipelineMetrics.
+     * 
+     * With "--from-dump FILE" the pages are read straight out of the export
+     * (or dump) FILE and tagged in memory, there is no need to run WikiParser
+     * first, and "--keep-xml" also writes the XML document WikiParser would.
+     * The dump is then read on "--read-threads N" threads, 1 by default, and
+     * the pages scanned on "--extract-threads N", 1 by default or 0 to scan
+     * them as they are read, with up to "--queue N" pages extracted ahead of
+     * the taggers, by default four per extracting thread.
+     * 
+     * The taggers start loading in the background as soon as the arguments
+     * are read, so the model loads while the pages are, see TaggerPool. For
+     * the fastest start also use the class data sharing archive built by
+     * "ant cds-archive".
+     * 
      * @param args the command line arguments
      */
     public static void main(String[] args) {
         
+        int threads = Runtime.getRuntime().availableProcessors();
+        int cacheSize = 100000;
+        int reportBudget = 2000000;
+        long segmentBytes = 0;
+        boolean binaryCorpus = false;
+        int progressSeconds = 30;
+        boolean report = false;
+        String dumpFileName = null;
+        boolean keepXML = false;
+        int readThreads = 1;
+        int extractThreads = 1;
+        int queueSize = 0;
+        long segmentMB = SegmentStore.DEFAULT_SEGMENT_BYTES >> 20;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--cache")) cacheSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--report-budget")) reportBudget = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--segment-mb")) segmentMB = Long.parseLong(args[++i]);
+            else if (args[i].equals("--progress")) {
+                progressSeconds = Integer.parseInt(args[++i]);
+                report = true;
+            }
+            else if (args[i].equals("--from-dump")) dumpFileName = args[++i];
+            else if (args[i].equals("--read-threads")) readThreads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--extract-threads")) extractThreads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--queue")) queueSize = Integer.parseInt(args[++i]);
+        }
+        for (String arg : args) {
+            if (arg.equals("--store")) segmentBytes = Math.max(1, segmentMB) << 20;
+            if (arg.equals("--corpus")) binaryCorpus = true;
+            if (arg.equals("--keep-xml")) keepXML = true;
+        }
+        TaggerPool.get(TAGGER_MODEL).preload(threads);
+        
         /**
          * CHANGE THIS FILENAME TO YOUR XML FILE TO PARSE
          * PLACE YOUR XML FILE INTO THE xmlInput FOLDER
@@ -464,19 +628,43 @@ if (!theDir.exists()) {
         createDirectory(cummReportsFolder);        
 
 //        ArrayList<xmlPage> CategoryPagelist = importAnchorXMLFile(pageCategoryFileName, "category");
-//        ArrayList<File> categoryPageFile = makeTextFile(CategoryPagelist, 1, pageCategoryOutputFileName, taggerOutputFolder, cummReportsFolder);
+//        ArrayList<File> categoryPageFile = makeTextFile(CategoryPagelist, 1, pageCategoryOutputFileName, taggerOutputFolder, cummReportsFolder, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
 //        
 //        ArrayList<xmlPage> CitationPagelist = importAnchorXMLFile(pageCitationFileName, "citation");
-//        ArrayList<File> citationPageFile = makeTextFile(CitationPagelist, 2, pageCitationOutputFileName, taggerOutputFolder, cummReportsFolder);
+//        ArrayList<File> citationPageFile = makeTextFile(CitationPagelist, 2, pageCitationOutputFileName, taggerOutputFolder, cummReportsFolder, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
 //        
 //        ArrayList<xmlPage> AnchorPagelist = importAnchorXMLFile(pageAnchorFileName, "anchor");
-//        ArrayList<File> anchorPageFile = makeTextFile(AnchorPagelist, 3, pageAnchorOutputFileName, taggerOutputFolder, cummReportsFolder);
+//        ArrayList<File> anchorPageFile = makeTextFile(AnchorPagelist, 3, pageAnchorOutputFileName, taggerOutputFolder, cummReportsFolder, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
 //        
-        ArrayList<xmlPage> TextPagelist = importAnchorXMLFile(pageTextFileName, "text");
-        ArrayList<File> textPageFile = makeTextFile(TextPagelist, 4, pageTextOutputFileName, "POSTaggerOutput/Text", cummReportsFolder);
+        ArrayList<xmlPage> TextPagelist = null;
+        if (dumpFileName == null) {
+            TextPagelist = importAnchorXMLFile(pageTextFileName, "text");
+            if (TextPagelist != null) PipelineMetrics.get().setPageTotal(TextPagelist.size());
+        } else if (keepXML) {
+            createDirectory("xmlOutput");
+        }
+        ArrayList<File> textPageFile;
+        Closeable progress = PipelineMetrics.get().startProgressLog(progressSeconds);
+        try {
+            if (dumpFileName != null) {
+                textPageFile = makeTextFileFromDump(dumpFileName, 4, keepXML ? "xmlOutput" : null, pageTextOutputFileName, "POSTaggerOutput/Text", cummReportsFolder, readThreads, extractThreads, queueSize, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
+            } else {
+                textPageFile = makeTextFile(TextPagelist, 4, pageTextOutputFileName, "POSTaggerOutput/Text", cummReportsFolder, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
+            }
+        } finally {
+            try {
+                progress.close();
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex.getMessage());
+            }
+        }
+        if (report) System.out.print(PipelineMetrics.get().getReport());
+        TaggerPool taggers = TaggerPool.get(TAGGER_MODEL);
+        System.out.println(String.format("Loaded %d taggers in %.1f sec",
+                taggers.getLoadedCount(), taggers.getLoadSeconds()));
 
 //        ArrayList<xmlPage> ArticlePagelist = importAnchorXMLFile(pageArticleFileName, "article");
-//        ArrayList<File> articlePageFile = makeTextFile(ArticlePagelist, -1, pageArticleOutputFileName, taggerOutputFolder, cummReportsFolder);
+//        ArrayList<File> articlePageFile = makeTextFile(ArticlePagelist, -1, pageArticleOutputFileName, taggerOutputFolder, cummReportsFolder, threads, cacheSize, reportBudget, segmentBytes, binaryCorpus);
     }
     
 }
@@ -0,0 +1,170 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package wikiparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks BZip2InputStream, and MultistreamBZip2InputStream, against a
+ * fixture compressed by the bzip2 tool: the first 250000 bytes of the test
+ * export in xmlInput, at a block size of 100k so it spans three blocks.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class BZip2InputStreamTest {
+
+    private static final String FIXTURE = "WikiParseTestFile-250k.xml.bz2";
+    private static final int FIXTURE_LENGTH = 250000;
+
+    /** an empty stream, as written by bzip2 -9 */
+    private static final byte[] EMPTY_STREAM = {
+        'B', 'Z', 'h', '9', 0x17, 0x72, 0x45, 0x38, 0x50, (byte) 0x90, 0, 0, 0, 0
+    };
+
+    private static byte[] plain;        // what the fixture holds
+    private static byte[] compressed;   // the fixture
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadFixture() throws IOException {
+        byte[] export = Files.readAllBytes(Paths.get("xmlInput", "WikiParseTestFile.xml"));
+        plain = Arrays.copyOf(export, FIXTURE_LENGTH);
+        try (InputStream in = BZip2InputStreamTest.class.getResourceAsStream(FIXTURE)) {
+            compressed = readAll(in);
+        }
+    }
+
+    @Test
+    public void decodesEveryBlock() throws IOException {
+        assertArrayEquals(plain, inflate(compressed));
+    }
+
+    @Test
+    public void decodesByteAtATime() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new BZip2InputStream(new ByteArrayInputStream(compressed))) {
+            int b;
+            while ((b = in.read()) >= 0) out.write(b);
+        }
+        assertArrayEquals(plain, out.toByteArray());
+    }
+
+    @Test
+    public void decodesEmptyStream() throws IOException {
+        assertEquals(0, inflate(EMPTY_STREAM).length);
+    }
+
+    @Test
+    public void decodesConcatenatedStreams() throws IOException {
+        byte[] streams = concat(compressed, EMPTY_STREAM, compressed);
+        assertArrayEquals(concat(plain, plain), inflate(streams));
+    }
+
+    @Test
+    public void stopsAfterFirstStream() throws IOException {
+        byte[] streams = concat(compressed, compressed);
+        try (InputStream in = new BZip2InputStream(new ByteArrayInputStream(streams), false)) {
+            assertArrayEquals(plain, readAll(in));
+        }
+    }
+
+    @Test
+    public void decodesMultistreamFile() throws IOException {
+        File file = folder.newFile("multistream.xml.bz2");
+        Files.write(file.toPath(), concat(compressed, compressed, compressed));
+        assertTrue(MultistreamBZip2InputStream.isMultistream(file.getPath()));
+        try (InputStream in = new MultistreamBZip2InputStream(file.getPath(), 2)) {
+            assertArrayEquals(concat(plain, plain, plain), readAll(in));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedStream() {
+        int[] cuts = { 3, 10, 100, compressed.length / 2, compressed.length - 5, compressed.length - 1 };
+        for (int cut : cuts) {
+            assertFails("cut at " + cut, Arrays.copyOf(compressed, cut));
+        }
+    }
+
+    @Test
+    public void rejectsCorruptedStream() {
+        int[] offsets = { 4, 20, 1000, compressed.length / 3, compressed.length - 20 };
+        for (int offset : offsets) {
+            byte[] corrupted = compressed.clone();
+            corrupted[offset] ^= 0x55;
+            assertFails("corrupted at " + offset, corrupted);
+        }
+    }
+
+    @Test
+    public void rejectsOtherData() {
+        assertFails("plain text", plain);
+        assertFails("no data", new byte[0]);
+    }
+
+    private static void assertFails(String what, byte[] data) {
+        try {
+            fail(what + ": no IOException, " + inflate(data).length + " bytes read");
+        } catch (IOException expected) {
+            // the damage was found
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        try (InputStream in = new BZip2InputStream(new ByteArrayInputStream(data))) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes SegmentStores and reads every page back by its title.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class SegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackEveryPage() throws IOException {
+        Map<String, String> pages = new LinkedHashMap<>();
+        pages.put("Peregrino Anselmo", "Peregrino_NNP Anselmo_NNP was_VBD ");
+        pages.put("Ramón Muttis", "Ramón_NNP Muttis_NNP ");
+        pages.put("日本", "日本_NN ");
+        pages.put("Empty", "");
+        String store = folder.getRoot().getPath();
+        try (SegmentStore.Writer writer = new SegmentStore.Writer(store, "pages",
+                SegmentStore.DEFAULT_SEGMENT_BYTES)) {
+            for (Map.Entry<String, String> page : pages.entrySet()) {
+                writer.put(page.getKey(), page.getValue());
+            }
+        }
+        try (SegmentStore reader = new SegmentStore(store, "pages")) {
+            assertEquals(pages.size(), reader.size());
+            for (Map.Entry<String, String> page : pages.entrySet()) {
+                assertEquals(page.getValue(), reader.get(page.getKey()));
+            }
+            assertNull(reader.get("Not A Page"));
+            assertNull(reader.get(""));
+        }
+    }
+
+    @Test
+    public void writesThroughAppend() throws IOException {
+        String store = folder.getRoot().getPath();
+        try (SegmentStore.Writer writer = new SegmentStore.Writer(store, "pages", 1 << 20)) {
+            try (Writer out = writer.append("Arnold Badjou")) {
+                out.write("Arnold_NNP ");
+                out.write("Badjou_NNP ");
+            }
+        }
+        try (SegmentStore reader = new SegmentStore(store, "pages")) {
+            assertEquals("Arnold_NNP Badjou_NNP ", reader.get("Arnold Badjou"));
+        }
+    }
+
+    @Test
+    public void lastRepeatedTitleWins() throws IOException {
+        String store = folder.getRoot().getPath();
+        try (SegmentStore.Writer writer = new SegmentStore.Writer(store, "pages", 1 << 20)) {
+            writer.put("Delfín Benítez Cáceres", "first ");
+            writer.put("Other", "other ");
+            writer.put("Delfín Benítez Cáceres", "second ");
+        }
+        try (SegmentStore reader = new SegmentStore(store, "pages")) {
+            assertEquals(3, reader.size());
+            assertEquals("second ", reader.get("Delfín Benítez Cáceres"));
+            assertEquals("other ", reader.get("Other"));
+        }
+    }
+
+    @Test
+    public void tellsCollidingTitlesApart() throws IOException {
+        // "Aa" and "BB" have the same String hash
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        String store = folder.getRoot().getPath();
+        try (SegmentStore.Writer writer = new SegmentStore.Writer(store, "pages", 1 << 20)) {
+            writer.put("Aa", "a ");
+            writer.put("BB", "b ");
+        }
+        try (SegmentStore reader = new SegmentStore(store, "pages")) {
+            assertEquals("a ", reader.get("Aa"));
+            assertEquals("b ", reader.get("BB"));
+            assertNull(reader.get("C#"));
+        }
+    }
+
+    @Test
+    public void rollsOverToNewSegments() throws IOException {
+        String store = folder.getRoot().getPath();
+        SegmentStore.Writer writer = new SegmentStore.Writer(store, "pages", 100);
+        try {
+            for (int i = 0; i < 50; i++) {
+                writer.put("Page " + i, "token_NN number_NN " + i + "_CD ");
+            }
+        } finally {
+            writer.close();
+        }
+        assertTrue(writer.getSegments().size() > 1);
+        for (Path segment : writer.getSegments()) {
+            // a segment only goes past the size for a record bigger than it
+            assertTrue(Files.size(segment) <= 100);
+        }
+        try (SegmentStore reader = new SegmentStore(store, "pages")) {
+            assertEquals(50, reader.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals("token_NN number_NN " + i + "_CD ", reader.get("Page " + i));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(folder.getRoot().toPath().resolve("pages.idx"), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        new SegmentStore(folder.getRoot().getPath(), "pages").close();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+* Copyright (c) 2016 William Hatfield, Utkarshani Jaimini, Uday Sagar Panjala.
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions: 
+* 
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+ */
+package xmlparser;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes TaggedCorpus files and turns the word and tag ids of every page
+ * back into the tagged text.
+ *
+ * @author W. Hatfield
+ * @author U. Jaimini
+ * @author U. Panjala
+ */
+public class TaggedCorpusTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void idsRoundTripToTaggedText() throws IOException {
+        List<List<String>> pages = Arrays.asList(
+                Arrays.asList("Peregrino_NNP Anselmo_NNP was_VBD a_DT footballer_NN ._. ",
+                        "He_PRP played_VBD for_IN Peñarol_NNP ._. "),
+                Collections.singletonList("1930_CD FIFA_NNP World_NNP Cup_NNP "),
+                Collections.singletonList(""),
+                Collections.singletonList("  New_York_NNP\tuntagged a_DT\n"));
+        Path path = folder.getRoot().toPath().resolve("pages.corpus");
+        try (TaggedCorpus.Writer writer = new TaggedCorpus.Writer(path)) {
+            for (int page = 0; page < pages.size(); page++) {
+                writer.addPage("Page " + page, pages.get(page));
+            }
+            assertEquals(pages.size(), writer.getPageCount());
+        }
+        try (TaggedCorpus corpus = new TaggedCorpus(path)) {
+            assertEquals(pages.size(), corpus.getPageCount());
+            long tokens = 0;
+            for (int page = 0; page < pages.size(); page++) {
+                List<String> expected = tokens(pages.get(page));
+                assertEquals("Page " + page, corpus.getTitle(page));
+                assertEquals(expected.size(), corpus.getTokenCount(page));
+                assertEquals(expected, untag(corpus, page));
+                tokens += expected.size();
+            }
+            assertEquals(tokens, corpus.getTokenCount());
+        }
+    }
+
+    @Test
+    public void sharesIdsAcrossPages() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("pages.corpus");
+        try (TaggedCorpus.Writer writer = new TaggedCorpus.Writer(path)) {
+            writer.addPage("One", Collections.singletonList("the_DT cup_NN "));
+            writer.addPage("Two", Collections.singletonList("cup_NN the_DT cup_VB "));
+        }
+        try (TaggedCorpus corpus = new TaggedCorpus(path)) {
+            assertEquals(2, corpus.getWordCount());
+            assertEquals(3, corpus.getTagCount());
+            IntBuffer one = corpus.getWordIds(0), two = corpus.getWordIds(1);
+            assertEquals(one.get(0), two.get(1));
+            assertEquals(one.get(1), two.get(0));
+            assertEquals(two.get(0), two.get(2));
+            assertEquals("cup", corpus.getWord(two.get(2)));
+            assertEquals("VB", corpus.getTag(corpus.getTagIds(1).get(2)));
+        }
+    }
+
+    @Test
+    public void keepsTokensWithoutTags() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("pages.corpus");
+        try (TaggedCorpus.Writer writer = new TaggedCorpus.Writer(path)) {
+            writer.addPage("Plain", Collections.singletonList("untagged"));
+        }
+        try (TaggedCorpus corpus = new TaggedCorpus(path)) {
+            assertEquals(TaggedCorpus.NO_TAG, corpus.getTagIds(0).get(0));
+            assertNull(corpus.getTag(TaggedCorpus.NO_TAG));
+            assertEquals("untagged", corpus.getWord(corpus.getWordIds(0).get(0)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("other.corpus");
+        Files.write(path, new byte[64]);
+        new TaggedCorpus(path).close();
+    }
+
+    /**
+     * @return the tokens of the page, rebuilt from their ids
+     */
+    private static List<String> untag(TaggedCorpus corpus, int page) {
+        IntBuffer words = corpus.getWordIds(page), tags = corpus.getTagIds(page);
+        List<String> tokens = new ArrayList<>();
+        while (words.hasRemaining()) {
+            String word = corpus.getWord(words.get());
+            int tag = tags.get();
+            tokens.add(tag == TaggedCorpus.NO_TAG ? word : word + "_" + corpus.getTag(tag));
+        }
+        return tokens;
+    }
+
+    private static List<String> tokens(List<String> tagged) {
+        List<String> tokens = new ArrayList<>();
+        for (String text : tagged) {
+            for (String token : text.trim().split("\\s+")) {
+                if (!token.isEmpty()) tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}